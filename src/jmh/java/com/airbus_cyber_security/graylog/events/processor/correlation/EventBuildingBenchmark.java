@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountInputs;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.AdaptiveScheduler;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountCheckExecutor;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountResult;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountSearches;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.GroupByFields;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SlidingWindowPersistence;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SlidingWindowStore;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.graylog.events.event.Event;
+import org.graylog.events.event.EventFactory;
+import org.graylog.events.processor.DBEventProcessorStateService;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorDependencyCheck;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.scheduler.clock.JobSchedulerSystemClock;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measures the execution of a rule whose aggregations return groups which all reach the thresholds:
+ * threshold checks, then the building of the events and of their messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBuildingBenchmark {
+
+    private static final long SEARCH_WITHIN_MS = 60 * 1000;
+    private static final DateTime END = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    // number of triggered groups
+    @Param({"100", "10000"})
+    private int groupCount;
+
+    private CorrelationCountProcessor processor;
+    private EventFactory eventFactory;
+    private CorrelationCountProcessorParameters parameters;
+
+    @Setup
+    public void setUp() throws EventProcessorException {
+        Random random = new Random(42);
+        ImmutableList.Builder<CorrelationCountResult> results = ImmutableList.builder();
+        GroupByFields.Layout layout = GroupByFields.layout(CorrelationCountInputs.GROUPING_FIELDS);
+        for (ImmutableList<String> group: CorrelationCountInputs.groups(this.groupCount, random)) {
+            results.add(new CorrelationCountResult(END, layout.with(group), 1 + random.nextInt(100), 1 + random.nextInt(100)));
+        }
+        CorrelationCountSearches searches = Mockito.mock(CorrelationCountSearches.class, Mockito.withSettings().stubOnly());
+        Mockito.when(searches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(results.build());
+
+        EventDefinition eventDefinition = Mockito.mock(EventDefinition.class, Mockito.withSettings().stubOnly());
+        Mockito.when(eventDefinition.id()).thenReturn("benchmark");
+        Mockito.when(eventDefinition.title()).thenReturn("benchmark");
+        Mockito.when(eventDefinition.config()).thenReturn(CorrelationCountInputs.configuration(OrderType.ANY, SEARCH_WITHIN_MS, SEARCH_WITHIN_MS));
+        EventProcessorDependencyCheck dependencyCheck = Mockito.mock(EventProcessorDependencyCheck.class, Mockito.withSettings().stubOnly());
+        Mockito.when(dependencyCheck.hasMessagesIndexedUpTo(Mockito.any())).thenReturn(true);
+        DBEventProcessorStateService stateService = Mockito.mock(DBEventProcessorStateService.class, Mockito.withSettings().stubOnly());
+        SlidingWindowStore slidingWindowStore = new SlidingWindowStore(Mockito.mock(SlidingWindowPersistence.class, Mockito.withSettings().stubOnly()));
+        this.processor = new CorrelationCountProcessor(eventDefinition, dependencyCheck, stateService, searches, slidingWindowStore,
+                new AdaptiveScheduler(), new CorrelationCountCheckExecutor(1, 1), new TestMessageFactory(),
+                new CorrelationCountMetrics(new MetricRegistry()), JobSchedulerSystemClock.INSTANCE);
+
+        this.eventFactory = Mockito.mock(EventFactory.class, Mockito.withSettings().stubOnly());
+        Event event = Mockito.mock(Event.class, Mockito.withSettings().stubOnly());
+        Mockito.when(this.eventFactory.createEvent(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(event);
+        this.parameters = CorrelationCountProcessorParameters.builder()
+                .timerange(AbsoluteRange.create(END.minus(SEARCH_WITHIN_MS), END))
+                .build();
+    }
+
+    @Benchmark
+    public void createEvents(Blackhole blackhole) throws EventProcessorException {
+        this.processor.createEvents(this.eventFactory, this.parameters, blackhole::consume);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountMetrics;
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.events.processor.aggregation.AggregationEventProcessorParameters;
+import org.graylog.events.processor.aggregation.AggregationResult;
+import org.graylog.events.processor.aggregation.AggregationSearch;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measures the conversion of the aggregation results of both streams into correlation results
+ * (CorrelationCountSearches.count with a search backend which immediately returns synthetic results).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationCombineBenchmark {
+
+    private static final long EXECUTE_EVERY_MS = 60 * 1000;
+    private static final DateTime END = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    // number of distinct groups in each stream
+    @Param({"1000", "100000"})
+    private int groupCount;
+
+    // number of time windows of each group (more than one when the scheduler catches up)
+    @Param({"1", "4"})
+    private int bucketCount;
+
+    private CorrelationCountSearches searches;
+    private CorrelationCountProcessorConfig configuration;
+    private EventDefinition eventDefinition;
+    private TimeRange timeRange;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<ImmutableList<String>> groups = CorrelationCountInputs.groups(this.groupCount, random);
+        // half of the groups of the additional stream are also in the main stream
+        List<ImmutableList<String>> additionalGroups = new ArrayList<>(groups.subList(0, this.groupCount / 2));
+        additionalGroups.addAll(CorrelationCountInputs.groups(this.groupCount - additionalGroups.size(), random));
+        AggregationResult mainResult = CorrelationCountInputs.aggregationResult(groups, this.bucketCount, END, EXECUTE_EVERY_MS, 100, random);
+        AggregationResult additionalResult = CorrelationCountInputs.aggregationResult(additionalGroups, this.bucketCount, END, EXECUTE_EVERY_MS, 100, random);
+
+        this.configuration = CorrelationCountInputs.configuration(OrderType.ANY, EXECUTE_EVERY_MS, EXECUTE_EVERY_MS);
+        AggregationSearch.Factory factory = Mockito.mock(AggregationSearch.Factory.class, Mockito.withSettings().stubOnly());
+        Mockito.when(factory.create(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            AggregationEventProcessorParameters parameters = invocation.getArgument(1);
+            AggregationResult result = parameters.streams().contains(this.configuration.stream()) ? mainResult : additionalResult;
+            return (AggregationSearch) () -> result;
+        });
+        // the aggregation cache is disabled, so that each invocation combines the aggregation results
+        MetricRegistry metricRegistry = new MetricRegistry();
+        this.searches = new CorrelationCountSearches(factory, null, null, null, new CorrelationCountSearchExecutor(2),
+                new AggregationCache(0, Duration.minutes(1), metricRegistry), new SearchGovernor(16, metricRegistry), new CorrelationCountMetrics(metricRegistry));
+        this.eventDefinition = Mockito.mock(EventDefinition.class, Mockito.withSettings().stubOnly());
+        Mockito.when(this.eventDefinition.id()).thenReturn("benchmark");
+        Mockito.when(this.eventDefinition.title()).thenReturn("benchmark");
+        this.timeRange = AbsoluteRange.create(END.minus(this.bucketCount * EXECUTE_EVERY_MS), END);
+    }
+
+    @Benchmark
+    public Collection<CorrelationCountResult> count() throws EventProcessorException {
+        return this.searches.count(this.timeRange, this.configuration, this.eventDefinition);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.google.common.collect.ImmutableList;
+import org.graylog.events.processor.aggregation.AggregationKeyResult;
+import org.graylog.events.processor.aggregation.AggregationResult;
+import org.graylog.events.processor.aggregation.AggregationSeriesValue;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog2.indexer.results.DefaultResultMessageFactory;
+import org.graylog2.indexer.results.ResultMessage;
+import org.graylog2.indexer.results.ResultMessageFactory;
+import org.graylog2.indexer.results.SearchResult;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ * Generators of synthetic inputs for the benchmarks: groups of field values, aggregation results, message timestamps
+ * and search results. All generators are deterministic for a given Random.
+ */
+public final class CorrelationCountInputs {
+
+    public static final List<String> GROUPING_FIELDS = List.of("source_ip", "user");
+
+    private static final Count COUNT = Count.builder().id("correlation_id#source_ip#user").build();
+
+    private CorrelationCountInputs() {
+    }
+
+    public static CorrelationCountProcessorConfig configuration(OrderType messagesOrder, long searchWithinMs, long executeEveryMs) {
+        return CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType(ThresholdType.MORE.getDescription())
+                .additionalThreshold(0)
+                .thresholdType(ThresholdType.MORE.getDescription())
+                .threshold(0)
+                .messagesOrder(messagesOrder)
+                .searchWithinMs(searchWithinMs)
+                .executeEveryMs(executeEveryMs)
+                .groupingFields(GROUPING_FIELDS)
+                .comment("benchmark")
+                .searchQuery("*")
+                .additionalSearchQuery("*")
+                .build();
+    }
+
+    /*
+     * Returns cardinality distinct groups of values for GROUPING_FIELDS
+     */
+    public static List<ImmutableList<String>> groups(int cardinality, Random random) {
+        List<ImmutableList<String>> groups = new ArrayList<>(cardinality);
+        for (int i = 0; i < cardinality; i++) {
+            String sourceAddress = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+            groups.add(ImmutableList.of(sourceAddress, "user" + i));
+        }
+        return groups;
+    }
+
+    /*
+     * Returns the aggregation result of the groups, with bucketCount buckets (time windows) of executeEveryMs each,
+     * ending at end. Every group has a random count (between 1 and maximumCount) in every bucket.
+     */
+    public static AggregationResult aggregationResult(List<ImmutableList<String>> groups, int bucketCount, DateTime end,
+                                                      long executeEveryMs, int maximumCount, Random random) {
+        ImmutableList.Builder<AggregationKeyResult> keyResults = ImmutableList.builderWithExpectedSize(groups.size() * bucketCount);
+        long total = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            DateTime timestamp = end.minus((bucketCount - 1 - bucket) * executeEveryMs);
+            for (ImmutableList<String> group: groups) {
+                long count = 1 + random.nextInt(maximumCount);
+                total += count;
+                AggregationSeriesValue seriesValue = AggregationSeriesValue.builder()
+                        .key(group)
+                        .value(count)
+                        .series(COUNT)
+                        .build();
+                keyResults.add(AggregationKeyResult.builder()
+                        .key(group)
+                        .timestamp(timestamp)
+                        .seriesValues(ImmutableList.of(seriesValue))
+                        .build());
+            }
+        }
+        return AggregationResult.builder()
+                .keyResults(keyResults.build())
+                .effectiveTimerange(AbsoluteRange.create(end.minus(bucketCount * executeEveryMs), end))
+                .totalAggregatedMessages(total)
+                .sourceStreams(Set.of())
+                .build();
+    }
+
+    /*
+     * Returns count sorted timestamps, randomly spread over [start, start + span)
+     */
+    public static long[] timestamps(int count, long start, long span, Random random) {
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = start + (long) (random.nextDouble() * span);
+        }
+        Arrays.sort(timestamps);
+        return timestamps;
+    }
+
+    /*
+     * Returns a search result with messagesPerGroup messages for each group, spread over [end - span, end],
+     * sorted by descending timestamp like the searches of the plugin.
+     */
+    public static SearchResult searchResult(List<Map<String, String>> groups, int messagesPerGroup, DateTime end, long span, Random random) {
+        TestMessageFactory messageFactory = new TestMessageFactory();
+        List<Message> messages = new ArrayList<>(groups.size() * messagesPerGroup);
+        for (Map<String, String> group: groups) {
+            for (long timestamp: timestamps(messagesPerGroup, end.getMillis() - span, span, random)) {
+                Message message = messageFactory.createMessage("benchmark", "benchmark", new DateTime(timestamp, end.getZone()));
+                for (Map.Entry<String, String> field: group.entrySet()) {
+                    message.addField(field.getKey(), field.getValue());
+                }
+                messages.add(message);
+            }
+        }
+        messages.sort((message1, message2) -> message2.getTimestamp().compareTo(message1.getTimestamp()));
+        ResultMessageFactory resultMessageFactory = new DefaultResultMessageFactory(messageFactory);
+        List<ResultMessage> resultMessages = new ArrayList<>(messages.size());
+        for (Message message: messages) {
+            resultMessages.add(resultMessageFactory.createFromMessage(message));
+        }
+        SearchResult result = Mockito.mock(SearchResult.class, Mockito.withSettings().stubOnly());
+        Mockito.when(result.getResults()).thenReturn(resultMessages);
+        Mockito.when(result.getTotalResults()).thenReturn((long) resultMessages.size());
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares the former string keys (group by values joined with " - ") with GroupKey,
+ * when combining the buckets of both streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupKeyBenchmark {
+
+    private static final DateTime TIMESTAMP = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    @Param({"100000", "1000000"})
+    private int bucketCount;
+
+    private List<ImmutableList<String>> firstStreamBuckets;
+    private List<ImmutableList<String>> secondStreamBuckets;
+
+    @Setup
+    public void generateBuckets() {
+        Random random = new Random(42);
+        this.firstStreamBuckets = new ArrayList<>(this.bucketCount);
+        this.secondStreamBuckets = new ArrayList<>(this.bucketCount);
+        for (int i = 0; i < this.bucketCount; i++) {
+            String sourceAddress = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+            String user = "user" + i;
+            this.firstStreamBuckets.add(ImmutableList.of(sourceAddress, user));
+            // half of the groups of the second stream are also in the first stream
+            if (i % 2 == 0) {
+                this.secondStreamBuckets.add(ImmutableList.of(sourceAddress, user));
+            } else {
+                this.secondStreamBuckets.add(ImmutableList.of(sourceAddress, "other" + i));
+            }
+        }
+    }
+
+    private static String buildTermKey(ImmutableList<String> groupByFields) {
+        StringBuilder builder = new StringBuilder();
+        for (String field: groupByFields) {
+            if (0 < builder.length()) {
+                builder.append(" - ");
+            }
+            builder.append(field);
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public Map<String, Integer> internStringKeys() {
+        Map<String, Integer> identifiers = new HashMap<>();
+        for (ImmutableList<String> bucket: this.firstStreamBuckets) {
+            identifiers.putIfAbsent(buildTermKey(bucket), identifiers.size());
+        }
+        for (ImmutableList<String> bucket: this.secondStreamBuckets) {
+            identifiers.putIfAbsent(buildTermKey(bucket), identifiers.size());
+        }
+        return identifiers;
+    }
+
+    @Benchmark
+    public Map<GroupKey, Integer> internGroupKeys() {
+        Map<GroupKey, Integer> identifiers = new HashMap<>();
+        for (ImmutableList<String> bucket: this.firstStreamBuckets) {
+            identifiers.putIfAbsent(GroupKey.of(bucket), identifiers.size());
+        }
+        for (ImmutableList<String> bucket: this.secondStreamBuckets) {
+            identifiers.putIfAbsent(GroupKey.of(bucket), identifiers.size());
+        }
+        return identifiers;
+    }
+
+    @Benchmark
+    public Collection<CorrelationCountResult> combineResults() {
+        CorrelationCountCombinedResults results = new CorrelationCountCombinedResults(GroupByFields.layout(CorrelationCountInputs.GROUPING_FIELDS), false);
+        for (ImmutableList<String> bucket: this.firstStreamBuckets) {
+            results.addFirstStreamResult(TIMESTAMP, bucket, 1);
+        }
+        for (ImmutableList<String> bucket: this.secondStreamBuckets) {
+            results.addSecondStreamResult(TIMESTAMP, bucket, 1);
+        }
+        return results.getAll();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measures the order check of a group, from the message timestamps and from the per-timestamp counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderCheckBenchmark {
+
+    private static final long SEARCH_WITHIN_MS = 60 * 60 * 1000;
+
+    // number of messages of each stream
+    @Param({"100", "10000"})
+    private int messageCount;
+
+    @Param({"BEFORE", "AFTER"})
+    private OrderType messagesOrder;
+
+    private CorrelationCountCheck check;
+    private long[] mainTimestamps;
+    private long[] additionalTimestamps;
+    private TimestampHistogram mainHistogram;
+    private TimestampHistogram additionalHistogram;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        CorrelationCountProcessorConfig configuration = CorrelationCountInputs.configuration(this.messagesOrder, SEARCH_WITHIN_MS, SEARCH_WITHIN_MS).toBuilder()
+                .threshold(this.messageCount / 2)
+                .additionalThreshold(this.messageCount / 2)
+                .build();
+        this.check = new CorrelationCountCheck(configuration);
+        this.mainTimestamps = CorrelationCountInputs.timestamps(this.messageCount, 0, SEARCH_WITHIN_MS, random);
+        this.additionalTimestamps = CorrelationCountInputs.timestamps(this.messageCount, 0, SEARCH_WITHIN_MS, random);
+        this.mainHistogram = TimestampHistogram.of(this.mainTimestamps);
+        this.additionalHistogram = TimestampHistogram.of(this.additionalTimestamps);
+    }
+
+    @Benchmark
+    public boolean checkTimestamps() {
+        return this.check.isRuleTriggered(this.mainTimestamps, this.additionalTimestamps);
+    }
+
+    @Benchmark
+    public boolean checkHistograms() {
+        return this.check.isRuleTriggered(this.mainHistogram, this.additionalHistogram);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountMetrics;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog2.indexer.results.SearchResult;
+import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.SearchesConfig;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Measures the batched searches of message timestamps (CorrelationCountSearches.searchTimestamps): building the batch
+ * queries, and dispatching the messages of each batch back to their group. The search backend immediately returns
+ * the synthetic messages of the batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimestampSearchBenchmark {
+
+    private static final long SEARCH_WITHIN_MS = 60 * 60 * 1000;
+    private static final DateTime END = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    // number of groups whose thresholds are reached
+    @Param({"20", "1000"})
+    private int groupCount;
+
+    @Param({"10", "100"})
+    private int messagesPerGroup;
+
+    private CorrelationCountSearches searches;
+    private List<CorrelationCountResult> groups;
+    private EventDefinition eventDefinition;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        GroupByFields.Layout layout = GroupByFields.layout(CorrelationCountInputs.GROUPING_FIELDS);
+        this.groups = new ArrayList<>();
+        List<Map<String, String>> fields = new ArrayList<>();
+        for (ImmutableList<String> values: CorrelationCountInputs.groups(this.groupCount, random)) {
+            CorrelationCountResult group = new CorrelationCountResult(END, layout.with(values), this.messagesPerGroup, this.messagesPerGroup);
+            this.groups.add(group);
+            fields.add(group.getGroupByFields());
+        }
+
+        // the groups are searched in batches, in order: each search returns the messages of the next batch
+        List<SearchResult> batchResults = new ArrayList<>();
+        for (int start = 0; start < fields.size(); start += CorrelationCountSearches.BATCH_SIZE) {
+            List<Map<String, String>> batch = fields.subList(start, Math.min(start + CorrelationCountSearches.BATCH_SIZE, fields.size()));
+            batchResults.add(CorrelationCountInputs.searchResult(batch, this.messagesPerGroup, END, SEARCH_WITHIN_MS, random));
+        }
+        AtomicInteger nextBatch = new AtomicInteger();
+        Searches backend = Mockito.mock(Searches.class, Mockito.withSettings().stubOnly());
+        Mockito.when(backend.search(Mockito.any(SearchesConfig.class))).thenAnswer(invocation ->
+                batchResults.get(nextBatch.getAndIncrement() % batchResults.size()));
+        MetricRegistry metricRegistry = new MetricRegistry();
+        this.searches = new CorrelationCountSearches(null, backend, null, null, new CorrelationCountSearchExecutor(1),
+                new AggregationCache(0, Duration.minutes(1), metricRegistry), new SearchGovernor(16, metricRegistry), new CorrelationCountMetrics(metricRegistry));
+        this.eventDefinition = Mockito.mock(EventDefinition.class, Mockito.withSettings().stubOnly());
+    }
+
+    @Benchmark
+    public List<long[]> searchTimestamps() throws EventProcessorException {
+        return this.searches.searchTimestamps("*", "main stream", this.groups, SEARCH_WITHIN_MS, this.eventDefinition);
+    }
+}
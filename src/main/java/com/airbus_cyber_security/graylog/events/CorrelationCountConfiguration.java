@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events;
+
+import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
+import org.graylog2.plugin.PluginConfigBean;
+
+/**
+ * Plugin settings, read from the graylog server configuration file.
+ */
+public class CorrelationCountConfiguration implements PluginConfigBean {
+    public static final String SEARCH_THREADS = "correlation_count_search_threads";
+    public static final String CHECK_THREADS = "correlation_count_check_threads";
+    public static final String CHECK_THREADS_PER_RULE = "correlation_count_check_threads_per_rule";
+    public static final String AGGREGATION_CACHE_SIZE = "correlation_count_aggregation_cache_size";
+    public static final String AGGREGATION_CACHE_TTL = "correlation_count_aggregation_cache_ttl";
+    public static final String MAX_CONCURRENT_SEARCHES = "correlation_count_max_concurrent_searches";
+
+    @Parameter(value = SEARCH_THREADS, validators = PositiveIntegerValidator.class)
+    private int searchThreads = 4;
+
+    @Parameter(value = CHECK_THREADS, validators = PositiveIntegerValidator.class)
+    private int checkThreads = 16;
+
+    @Parameter(value = CHECK_THREADS_PER_RULE, validators = PositiveIntegerValidator.class)
+    private int checkThreadsPerRule = 4;
+
+    // 0 disables the cache
+    @Parameter(value = AGGREGATION_CACHE_SIZE)
+    private int aggregationCacheSize = 0;
+
+    @Parameter(value = AGGREGATION_CACHE_TTL, validators = PositiveDurationValidator.class)
+    private Duration aggregationCacheTtl = Duration.minutes(1);
+
+    @Parameter(value = MAX_CONCURRENT_SEARCHES, validators = PositiveIntegerValidator.class)
+    private int maxConcurrentSearches = 16;
+
+    public int getSearchThreads() {
+        return this.searchThreads;
+    }
+
+    public int getCheckThreads() {
+        return this.checkThreads;
+    }
+
+    public int getCheckThreadsPerRule() {
+        return this.checkThreadsPerRule;
+    }
+
+    public int getAggregationCacheSize() {
+        return this.aggregationCacheSize;
+    }
+
+    public Duration getAggregationCacheTtl() {
+        return this.aggregationCacheTtl;
+    }
+
+    public int getMaxConcurrentSearches() {
+        return this.maxConcurrentSearches;
+    }
+}
@@ -24,6 +24,8 @@ import com.airbus_cyber_security.graylog.events.contentpack.entities.Correlation
 import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessor;
 import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorParameters;
 import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountExecutorsService;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SearchGovernor;
 import org.graylog2.plugin.PluginConfigBean;
 import org.graylog2.plugin.PluginModule;
 
@@ -35,11 +37,13 @@ public class CorrelationCountModule extends PluginModule {
      */
     @Override
     public Set<? extends PluginConfigBean> getConfigBeans() {
-        return Collections.emptySet();
+        return Collections.singleton(new CorrelationCountConfiguration());
     }
 
     @Override
     protected void configure() {
+        addConfigBeans();
+
         registerJacksonSubtype(CorrelationCountProcessorConfigEntity.class,
                 CorrelationCountProcessorConfigEntity.TYPE_NAME);
 
@@ -48,5 +52,10 @@ public class CorrelationCountModule extends PluginModule {
                 CorrelationCountProcessor.Factory.class,
                 CorrelationCountProcessorConfig.class,
                 CorrelationCountProcessorParameters.class);
+
+        // shared by all the correlation count processors, its metrics are registered as soon as the server starts
+        bind(SearchGovernor.class).asEagerSingleton();
+        // shuts the executors of the searches and of the checks down with the server
+        addInitializer(CorrelationCountExecutorsService.class);
     }
 }
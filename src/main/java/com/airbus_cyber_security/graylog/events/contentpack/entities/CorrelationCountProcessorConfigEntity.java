@@ -17,13 +17,17 @@
 
 package com.airbus_cyber_security.graylog.events.contentpack.entities;
 
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelatedStream;
 import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderCheckType;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SeriesType;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import org.graylog.events.contentpack.entities.EventProcessorConfigEntity;
 import org.graylog.events.processor.EventProcessorConfig;
 import org.graylog2.contentpacks.model.entities.EntityDescriptor;
@@ -45,13 +49,23 @@ public abstract class CorrelationCountProcessorConfigEntity implements EventProc
     private static final String FIELD_ADDITIONAL_THRESHOLD = "additional_threshold";
     private static final String FIELD_THRESHOLD_TYPE = "threshold_type";
     private static final String FIELD_THRESHOLD = "threshold";
+    private static final String FIELD_SERIES = "series";
+    private static final String FIELD_SERIES_FIELD = "series_field";
+    private static final String FIELD_ADDITIONAL_SERIES = "additional_series";
+    private static final String FIELD_ADDITIONAL_SERIES_FIELD = "additional_series_field";
     private static final String FIELD_MESSAGES_ORDER = "messages_order";
+    private static final String FIELD_ORDER_CHECK = "order_check";
     private static final String FIELD_SEARCH_WITHIN_MS = "search_within_ms";
     private static final String FIELD_EXECUTE_EVERY_MS = "execute_every_ms";
     private static final String FIELD_GROUPING_FIELDS = "grouping_fields";
     private static final String FIELD_COMMENT = "comment";
     private static final String FIELD_SEARCH_QUERY = "search_query";
     private static final String FIELD_ADDITIONAL_SEARCH_QUERY = "additional_search_query";
+    private static final String FIELD_INCREMENTAL = "incremental";
+    private static final String FIELD_ADAPTIVE_SCHEDULING = "adaptive_scheduling";
+    private static final String FIELD_MAX_EXECUTE_EVERY_MS = "max_execute_every_ms";
+    private static final String FIELD_CORRELATED_STREAMS = "correlated_streams";
+    private static final String FIELD_SINGLE_AGGREGATION = "single_aggregation";
 
     @JsonProperty(FIELD_STREAM)
     public abstract ValueReference stream();
@@ -71,9 +85,24 @@ public abstract class CorrelationCountProcessorConfigEntity implements EventProc
     @JsonProperty(FIELD_THRESHOLD)
     public abstract int threshold();
 
+    @JsonProperty(FIELD_SERIES)
+    public abstract ValueReference series();
+
+    @JsonProperty(FIELD_SERIES_FIELD)
+    public abstract ValueReference seriesField();
+
+    @JsonProperty(FIELD_ADDITIONAL_SERIES)
+    public abstract ValueReference additionalSeries();
+
+    @JsonProperty(FIELD_ADDITIONAL_SERIES_FIELD)
+    public abstract ValueReference additionalSeriesField();
+
     @JsonProperty(FIELD_MESSAGES_ORDER)
     public abstract ValueReference messagesOrder();
 
+    @JsonProperty(FIELD_ORDER_CHECK)
+    public abstract ValueReference orderCheck();
+
     @JsonProperty(FIELD_SEARCH_WITHIN_MS)
     public abstract long searchWithinMs();
 
@@ -92,6 +121,21 @@ public abstract class CorrelationCountProcessorConfigEntity implements EventProc
     @JsonProperty(value = FIELD_ADDITIONAL_SEARCH_QUERY)
     public abstract ValueReference additionalSearchQuery();
 
+    @JsonProperty(FIELD_INCREMENTAL)
+    public abstract boolean incremental();
+
+    @JsonProperty(FIELD_ADAPTIVE_SCHEDULING)
+    public abstract boolean adaptiveScheduling();
+
+    @JsonProperty(FIELD_MAX_EXECUTE_EVERY_MS)
+    public abstract long maxExecuteEveryMs();
+
+    @JsonProperty(FIELD_CORRELATED_STREAMS)
+    public abstract ImmutableList<CorrelatedStream> correlatedStreams();
+
+    @JsonProperty(FIELD_SINGLE_AGGREGATION)
+    public abstract boolean singleAggregation();
+
     public static Builder builder() {
         return Builder.create();
     }
@@ -103,7 +147,17 @@ public abstract class CorrelationCountProcessorConfigEntity implements EventProc
         @JsonCreator
         public static Builder create() {
             return new AutoValue_CorrelationCountProcessorConfigEntity.Builder()
-                    .type(TYPE_NAME);
+                    .type(TYPE_NAME)
+                    .orderCheck(ValueReference.of(OrderCheckType.MESSAGES))
+                    .series(ValueReference.of(SeriesType.COUNT))
+                    .seriesField(ValueReference.of(""))
+                    .additionalSeries(ValueReference.of(SeriesType.COUNT))
+                    .additionalSeriesField(ValueReference.of(""))
+                    .incremental(false)
+                    .adaptiveScheduling(false)
+                    .maxExecuteEveryMs(0)
+                    .correlatedStreams(ImmutableList.of())
+                    .singleAggregation(false);
         }
 
         @JsonProperty(FIELD_STREAM)
@@ -124,9 +178,24 @@ public abstract class CorrelationCountProcessorConfigEntity implements EventProc
         @JsonProperty(FIELD_THRESHOLD)
         public abstract Builder threshold(int threshold);
 
+        @JsonProperty(FIELD_SERIES)
+        public abstract Builder series(ValueReference series);
+
+        @JsonProperty(FIELD_SERIES_FIELD)
+        public abstract Builder seriesField(ValueReference seriesField);
+
+        @JsonProperty(FIELD_ADDITIONAL_SERIES)
+        public abstract Builder additionalSeries(ValueReference additionalSeries);
+
+        @JsonProperty(FIELD_ADDITIONAL_SERIES_FIELD)
+        public abstract Builder additionalSeriesField(ValueReference additionalSeriesField);
+
         @JsonProperty(FIELD_MESSAGES_ORDER)
         public abstract Builder messagesOrder(ValueReference messagesOrder);
 
+        @JsonProperty(FIELD_ORDER_CHECK)
+        public abstract Builder orderCheck(ValueReference orderCheck);
+
         @JsonProperty(FIELD_SEARCH_WITHIN_MS)
         public abstract Builder searchWithinMs(long searchWithinMs);
 
@@ -145,6 +214,21 @@ public abstract class CorrelationCountProcessorConfigEntity implements EventProc
         @JsonProperty(value = FIELD_ADDITIONAL_SEARCH_QUERY)
         public abstract Builder additionalSearchQuery(ValueReference additionalSearchQuery);
 
+        @JsonProperty(FIELD_INCREMENTAL)
+        public abstract Builder incremental(boolean incremental);
+
+        @JsonProperty(FIELD_ADAPTIVE_SCHEDULING)
+        public abstract Builder adaptiveScheduling(boolean adaptiveScheduling);
+
+        @JsonProperty(FIELD_MAX_EXECUTE_EVERY_MS)
+        public abstract Builder maxExecuteEveryMs(long maxExecuteEveryMs);
+
+        @JsonProperty(FIELD_CORRELATED_STREAMS)
+        public abstract Builder correlatedStreams(ImmutableList<CorrelatedStream> correlatedStreams);
+
+        @JsonProperty(FIELD_SINGLE_AGGREGATION)
+        public abstract Builder singleAggregation(boolean singleAggregation);
+
         public abstract CorrelationCountProcessorConfigEntity build();
     }
 
@@ -157,13 +241,23 @@ public abstract class CorrelationCountProcessorConfigEntity implements EventProc
                 .additionalThreshold(additionalThreshold())
                 .thresholdType(thresholdType().asString(parameters))
                 .threshold(threshold())
+                .series(SeriesType.fromString(series().asString(parameters)))
+                .seriesField(seriesField().asString(parameters))
+                .additionalSeries(SeriesType.fromString(additionalSeries().asString(parameters)))
+                .additionalSeriesField(additionalSeriesField().asString(parameters))
                 .messagesOrder(OrderType.fromString(messagesOrder().asString(parameters)))
+                .orderCheck(OrderCheckType.fromString(orderCheck().asString(parameters)))
                 .searchWithinMs(searchWithinMs())
                 .executeEveryMs(executeEveryMs())
                 .groupingFields(groupingFields())
                 .comment(comment().asString(parameters))
                 .searchQuery(searchQuery().asString(parameters))
                 .additionalSearchQuery(additionalSearchQuery().asString(parameters))
+                .incremental(incremental())
+                .adaptiveScheduling(adaptiveScheduling())
+                .maxExecuteEveryMs(maxExecuteEveryMs())
+                .correlatedStreams(correlatedStreams())
+                .singleAggregation(singleAggregation())
                 .build();
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+
+/*
+ * Stream correlated with the main stream, in addition to the additional stream. Its messages are counted like the
+ * messages of the additional stream, and their order is checked against the messages of the main stream.
+ */
+@AutoValue
+@JsonDeserialize(builder = CorrelatedStream.Builder.class)
+public abstract class CorrelatedStream {
+
+    private static final String FIELD_STREAM = "stream";
+    private static final String FIELD_SEARCH_QUERY = "search_query";
+    private static final String FIELD_THRESHOLD_TYPE = "threshold_type";
+    private static final String FIELD_THRESHOLD = "threshold";
+    private static final String FIELD_MESSAGES_ORDER = "messages_order";
+
+    @JsonProperty(FIELD_STREAM)
+    public abstract String stream();
+
+    @JsonProperty(FIELD_SEARCH_QUERY)
+    public abstract String searchQuery();
+
+    @JsonProperty(FIELD_THRESHOLD_TYPE)
+    public abstract String thresholdType();
+
+    @JsonProperty(FIELD_THRESHOLD)
+    public abstract int threshold();
+
+    // order of the messages of this stream relative to the messages of the main stream
+    @JsonProperty(FIELD_MESSAGES_ORDER)
+    public abstract OrderType messagesOrder();
+
+    public static Builder builder() {
+        return Builder.create();
+    }
+
+    public abstract Builder toBuilder();
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+        @JsonCreator
+        public static Builder create() {
+            return new AutoValue_CorrelatedStream.Builder()
+                    .searchQuery("*")
+                    .messagesOrder(OrderType.ANY);
+        }
+
+        @JsonProperty(FIELD_STREAM)
+        public abstract Builder stream(String stream);
+
+        @JsonProperty(FIELD_SEARCH_QUERY)
+        public abstract Builder searchQuery(String searchQuery);
+
+        @JsonProperty(FIELD_THRESHOLD_TYPE)
+        public abstract Builder thresholdType(String thresholdType);
+
+        @JsonProperty(FIELD_THRESHOLD)
+        public abstract Builder threshold(int threshold);
+
+        @JsonProperty(FIELD_MESSAGES_ORDER)
+        public abstract Builder messagesOrder(OrderType messagesOrder);
+
+        public abstract CorrelatedStream build();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventDefinitionDeleted;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Entry point to the metrics of the correlation rules, registered in the Graylog metric registry.
+ * The metrics of a rule are created once, on its first execution, and removed when its event definition is deleted.
+ */
+@Singleton
+public class CorrelationCountMetrics {
+
+    private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<String, RuleMetrics> rules = new ConcurrentHashMap<>();
+
+    @Inject
+    public CorrelationCountMetrics(MetricRegistry metricRegistry, EventBus eventBus) {
+        this(metricRegistry);
+        eventBus.register(this);
+    }
+
+    public CorrelationCountMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public RuleMetrics forRule(EventDefinition eventDefinition) {
+        if (eventDefinition.id() == null) {
+            // an unsaved rule (being tested) has no metrics of its own, and no deletion to unregister them
+            return new RuleMetrics(this.metricRegistry, null);
+        }
+        return this.rules.computeIfAbsent(eventDefinition.id(), identifier -> new RuleMetrics(this.metricRegistry, identifier));
+    }
+
+    @Subscribe
+    public void handleEventDefinitionDeleted(EventDefinitionDeleted event) {
+        remove(event.eventDefinitionId());
+    }
+
+    /*
+     * Unregisters all the metrics of the rule (nothing happens for the event definitions of other types)
+     */
+    void remove(String eventDefinitionId) {
+        this.rules.remove(eventDefinitionId);
+        String prefix = RuleMetrics.prefix(eventDefinitionId);
+        this.metricRegistry.removeMatching((name, metric) -> name.startsWith(prefix));
+    }
+}
@@ -17,12 +17,19 @@
 
 package com.airbus_cyber_security.graylog.events.processor.correlation;
 
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.AdaptiveScheduler;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountCheck;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountCheckExecutor;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountResult;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountSearches;
-import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.GroupByFields;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SlidingWindow;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SlidingWindowStore;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.TimestampCursor;
+import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.inject.assistedinject.Assisted;
 import org.graylog.events.event.Event;
 import org.graylog.events.event.EventFactory;
@@ -35,22 +42,27 @@ import org.graylog.events.processor.EventProcessorDependencyCheck;
 import org.graylog.events.processor.EventProcessorException;
 import org.graylog.events.processor.EventProcessorParameters;
 import org.graylog.events.processor.EventProcessorPreconditionException;
+import org.graylog.scheduler.clock.JobSchedulerClock;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.MessageFactory;
 import org.graylog2.plugin.MessageSummary;
 import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 
 // sources of inspiration:
@@ -68,24 +80,58 @@ public class CorrelationCountProcessor implements EventProcessor {
     private final DBEventProcessorStateService stateService;
     private final CorrelationCountProcessorConfig configuration;
     private final CorrelationCountCheck correlationCountCheck;
+    // in the order of the correlated streams of the configuration
+    private final List<CorrelationCountCheck> correlatedStreamChecks;
     private final CorrelationCountSearches correlationCountSearches;
+    private final SlidingWindowStore slidingWindowStore;
+    private final AdaptiveScheduler adaptiveScheduler;
     private final MessageFactory messageFactory;
+    private final CorrelationCountCheckExecutor checkExecutor;
+    private final RuleMetrics metrics;
+    private final JobSchedulerClock clock;
 
     @Inject
     public CorrelationCountProcessor(@Assisted EventDefinition eventDefinition, EventProcessorDependencyCheck dependencyCheck,
-                                     DBEventProcessorStateService stateService, CorrelationCountSearches correlationCountSearches, MessageFactory messageFactory) {
+                                     DBEventProcessorStateService stateService, CorrelationCountSearches correlationCountSearches,
+                                     SlidingWindowStore slidingWindowStore, AdaptiveScheduler adaptiveScheduler,
+                                     CorrelationCountCheckExecutor checkExecutor, MessageFactory messageFactory,
+                                     CorrelationCountMetrics metrics, JobSchedulerClock clock) {
         this.eventDefinition = eventDefinition;
         this.dependencyCheck = dependencyCheck;
         this.stateService = stateService;
         this.configuration = (CorrelationCountProcessorConfig) eventDefinition.config();
         this.correlationCountCheck = new CorrelationCountCheck(this.configuration);
+        this.correlatedStreamChecks = new ArrayList<>(this.configuration.correlatedStreams().size());
+        for (CorrelatedStream correlatedStream: this.configuration.correlatedStreams()) {
+            this.correlatedStreamChecks.add(new CorrelationCountCheck(this.configuration, correlatedStream));
+        }
         this.correlationCountSearches = correlationCountSearches;
+        this.slidingWindowStore = slidingWindowStore;
+        this.adaptiveScheduler = adaptiveScheduler;
         this.messageFactory = messageFactory;
+        this.checkExecutor = checkExecutor;
+        this.metrics = metrics.forRule(eventDefinition);
+        this.clock = clock;
     }
 
     @Override
     public void createEvents(EventFactory eventFactory, EventProcessorParameters eventProcessorParameters, EventConsumer<List<EventWithContext>> eventConsumer) throws EventProcessorException {
         TimeRange timerange = getTimeRangeFromParameters(eventProcessorParameters);
+        long start = this.clock.nowUTC().getMillis();
+        this.metrics.getLag().update(start - timerange.getTo().getMillis());
+
+        if (this.configuration.adaptiveScheduling()) {
+            this.adaptiveScheduler.evictExpired(start);
+            OptionalLong end = this.adaptiveScheduler.planEnd(this.eventDefinition.id(), this.configuration, timerange.getTo().getMillis(), start);
+            if (end.isEmpty()) {
+                LOG.debug("Skipping correlation count <{}/{}> for timerange <{} to {}>, which was already evaluated by a previous execution.",
+                        this.eventDefinition.title(), this.eventDefinition.id(), timerange.getFrom(), timerange.getTo());
+                this.metrics.getSkippedExecutions().inc();
+                this.stateService.setState(this.eventDefinition.id(), timerange.getFrom(), timerange.getTo());
+                return;
+            }
+            timerange = stretchTimeRange(timerange, end.getAsLong());
+        }
 
         // TODO: We have to take the Elasticsearch index.refresh_interval into account here!
         if (!dependencyCheck.hasMessagesIndexedUpTo(timerange)) {
@@ -94,20 +140,32 @@ public class CorrelationCountProcessor implements EventProcessor {
             throw new EventProcessorPreconditionException(msg, this.eventDefinition);
         }
 
-        List<CorrelationCountResult> results = runCheck(timerange);
-        List<EventWithContext> events = eventsFromCorrelationResults(eventFactory, results);
+        List<EventWithContext> events;
+        try (Timer.Context ignored = this.metrics.getExecutionTime().time()) {
+            List<CorrelationCountResult> results = runCheck(timerange);
+            events = eventsFromCorrelationResults(eventFactory, results);
+        }
+        this.metrics.getEventsEmitted().update(events.size());
+        if (this.configuration.adaptiveScheduling()) {
+            this.adaptiveScheduler.recordExecution(this.eventDefinition.id(), this.configuration, timerange.getTo().getMillis(),
+                    start, this.clock.nowUTC().getMillis());
+        }
         eventConsumer.accept(events);
         // Update the state for this processor! This state will be used for dependency checks between event processors.
         this.stateService.setState(this.eventDefinition.id(), timerange.getFrom(), timerange.getTo());
     }
 
     private ImmutableList<EventWithContext> eventsFromCorrelationResults(EventFactory eventFactory, List<CorrelationCountResult> results) throws EventProcessorException {
-        ImmutableList.Builder<EventWithContext> listEvents = ImmutableList.builder();
+        if (results.isEmpty()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<EventWithContext> listEvents = ImmutableList.builderWithExpectedSize(results.size());
+        EventDescriptionTemplate descriptionTemplate = new EventDescriptionTemplate(this.configuration);
 
         for (CorrelationCountResult result: results) {
-            Map<String, String> groupByFields = associateGroupByFields(result.getGroupByFields());
+            Map<String, String> groupByFields = result.getGroupByFields();
 
-            String resultDescription = getResultDescription(result.getFirstStreamCount(), result.getSecondStreamCount());
+            String resultDescription = descriptionTemplate.render(result);
             Message message = messageFactory.createMessage(resultDescription, "", result.getTimestamp());
             for (Map.Entry<String, String> groupBy: groupByFields.entrySet()) {
                 message.addField(groupBy.getKey(), groupBy.getValue());
@@ -117,6 +175,9 @@ public class CorrelationCountProcessor implements EventProcessor {
             Event event = eventFactory.createEvent(this.eventDefinition, result.getTimestamp(), resultDescription);
             event.addSourceStream(this.configuration.stream());
             event.addSourceStream(this.configuration.additionalStream());
+            for (CorrelatedStream correlatedStream: this.configuration.correlatedStreams()) {
+                event.addSourceStream(correlatedStream.stream());
+            }
 
             event.setTimerangeStart(this.calculateTimerangeStartFromTimestamp(result.getTimestamp()));
             event.setTimerangeEnd(result.getTimestamp());
@@ -128,24 +189,20 @@ public class CorrelationCountProcessor implements EventProcessor {
         return listEvents.build();
     }
 
-    private String getResultDescription(long countMainStream, long countAdditionalStream) {
-        String msgCondition;
-        if (this.configuration.messagesOrder().equals(OrderType.ANY)) {
-            msgCondition = "and";
-        } else {
-            msgCondition = this.configuration.messagesOrder().getDescription();
+    /*
+     * Moves the time range so that it ends at the given end (in epoch milliseconds), unless the messages are not
+     * indexed that far yet
+     */
+    private TimeRange stretchTimeRange(TimeRange timeRange, long end) {
+        long shift = end - timeRange.getTo().getMillis();
+        if (shift == 0) {
+            return timeRange;
         }
-
-        String resultDescription = "The additional stream had " + countAdditionalStream + " messages with trigger condition "
-                + this.configuration.additionalThresholdType().toLowerCase(Locale.ENGLISH) + " than " + this.configuration.additionalThreshold()
-                + " messages " + msgCondition + " the main stream had " + countMainStream + " messages with trigger condition "
-                + this.configuration.thresholdType().toLowerCase(Locale.ENGLISH) + " than " + this.configuration.threshold() + " messages in the last " + this.configuration.searchWithinMs() + " milliseconds";
-
-        if (!this.configuration.groupingFields().isEmpty()) {
-            resultDescription = resultDescription + " with the same value of the fields " + String.join(", ", this.configuration.groupingFields());
+        TimeRange stretchedTimeRange = AbsoluteRange.create(timeRange.getFrom().plus(shift), timeRange.getTo().plus(shift));
+        if (!this.dependencyCheck.hasMessagesIndexedUpTo(stretchedTimeRange)) {
+            return timeRange;
         }
-
-        return resultDescription + ". (Executes every: " + this.configuration.executeEveryMs() + " milliseconds)";
+        return stretchedTimeRange;
     }
 
     private TimeRange getTimeRangeFromParameters(EventProcessorParameters eventProcessorParameters) {
@@ -154,72 +211,248 @@ public class CorrelationCountProcessor implements EventProcessor {
     }
 
     @Override
-    public void sourceMessagesForEvent(Event event, Consumer<List<MessageSummary>> messageConsumer, long limit) {
-        if (limit <= 0) {
-            return;
-        }
+    public void sourceMessagesForEvent(Event event, Consumer<List<MessageSummary>> messageConsumer, long limit) throws EventProcessorException {
         TimeRange timeRange = AbsoluteRange.create(event.getTimerangeStart(), event.getTimerangeEnd());
         Map<String, String> groupByFields = event.getGroupByFields();
-        String searchQuery = this.configuration.searchQuery();
-        String additionalSearchQuery = this.configuration.additionalSearchQuery();
-        List<MessageSummary> summariesMainStream = this.correlationCountSearches.searchMessages(searchQuery, groupByFields, this.configuration.stream(), timeRange);
-        List<MessageSummary> summariesAdditionalStream = this.correlationCountSearches.searchMessages(additionalSearchQuery, groupByFields, this.configuration.additionalStream(), timeRange);
-        List<MessageSummary> summaries = Lists.newArrayList();
-        summaries.addAll(summariesMainStream);
-        summaries.addAll(summariesAdditionalStream);
-        messageConsumer.accept(summaries);
+        // the limit is shared between the streams, each stream gets its share of what the previous streams did not use
+        List<String> streams = new ArrayList<>();
+        List<String> searchQueries = new ArrayList<>();
+        streams.add(this.configuration.stream());
+        searchQueries.add(this.configuration.searchQuery());
+        streams.add(this.configuration.additionalStream());
+        searchQueries.add(this.configuration.additionalSearchQuery());
+        for (CorrelatedStream correlatedStream: this.configuration.correlatedStreams()) {
+            streams.add(correlatedStream.stream());
+            searchQueries.add(correlatedStream.searchQuery());
+        }
+        long remaining = limit;
+        for (int i = 0; i < streams.size(); i++) {
+            int remainingStreams = streams.size() - i;
+            long streamLimit = (remaining + remainingStreams - 1) / remainingStreams;
+            remaining -= this.correlationCountSearches.scrollMessages(searchQueries.get(i), groupByFields, streams.get(i),
+                    timeRange, streamLimit, messageConsumer, this.eventDefinition);
+        }
     }
 
-    private Map<String, String> associateGroupByFields(List<String> groupByFields) throws EventProcessorException {
-        Map<String, String> fields = new HashMap<>();
-        List<String> fieldNames = this.configuration.groupingFields();
-        for (int i = 0; i < fieldNames.size(); i++) {
-            String name = fieldNames.get(i);
-            try {
-                String value = groupByFields.get(i);
-                fields.put(name, value);
-            } catch (IndexOutOfBoundsException e) {
-                LOG.error("Expected {} groupBy fields in search result, but got {}", configuration.groupingFields().size(), groupByFields);
-                throw new EventProcessorException("Couldn't create events for: " + this.eventDefinition.title(), true, this.eventDefinition.id(), this.eventDefinition, e);
+    private Collection<CorrelationCountResult> countMessages(TimeRange timeRange) throws EventProcessorException {
+        if (!this.configuration.incremental()) {
+            return this.correlationCountSearches.count(timeRange, this.configuration, this.eventDefinition);
+        }
+
+        // like the aggregations, the window ends every executeEveryMs within the time range: a time range longer than
+        // searchWithinMs (when the executions catch up) is evaluated at each of these ends
+        long hopSize = this.configuration.executeEveryMs();
+        List<Long> windowEnds = new ArrayList<>();
+        for (long end = timeRange.getFrom().getMillis() + this.configuration.searchWithinMs(); end <= timeRange.getTo().getMillis(); end += hopSize) {
+            windowEnds.add(end);
+        }
+        if (windowEnds.isEmpty()) {
+            return List.of();
+        }
+        this.slidingWindowStore.evictExpired(windowEnds.get(windowEnds.size() - 1));
+        long firstEnd = windowEnds.get(0);
+        SlidingWindow window = this.slidingWindowStore.get(this.eventDefinition.id(), this.configuration, firstEnd);
+
+        // only the hops which were not counted by the previous executions are searched: those missing from the first
+        // window, then the last hop of each later window, all at once
+        List<Long> missingHops = new ArrayList<>(window.slideTo(firstEnd));
+        missingHops.addAll(windowEnds.subList(1, windowEnds.size()));
+        List<TimeRange> hopRanges = new ArrayList<>(missingHops.size());
+        for (long hopEnd: missingHops) {
+            hopRanges.add(AbsoluteRange.create(new DateTime(hopEnd - hopSize, DateTimeZone.UTC), new DateTime(hopEnd, DateTimeZone.UTC)));
+        }
+        List<Collection<CorrelationCountResult>> hopResults = this.correlationCountSearches.countPerHop(hopRanges, this.configuration, this.eventDefinition);
+
+        // the hops are added as the window slides, so that the counts at each end only cover its window
+        GroupByFields.Layout layout = GroupByFields.layout(this.configuration.groupingFields());
+        List<CorrelationCountResult> results = new ArrayList<>();
+        int nextHop = 0;
+        for (long end: windowEnds) {
+            window.slideTo(end);
+            while (nextHop < missingHops.size() && missingHops.get(nextHop) <= end) {
+                window.addHop(missingHops.get(nextHop), hopResults.get(nextHop));
+                nextHop++;
             }
+            results.addAll(window.getResults(new DateTime(end, DateTimeZone.UTC), layout));
+        }
+        if (!missingHops.isEmpty()) {
+            this.slidingWindowStore.save(this.eventDefinition.id(), window);
         }
-        return fields;
+        return results;
     }
 
     private ImmutableList<CorrelationCountResult> runCheck(TimeRange timeRange) throws EventProcessorException {
-        Collection<CorrelationCountResult> matchedResults = this.correlationCountSearches.count(timeRange, this.configuration, this.eventDefinition);
+        Collection<CorrelationCountResult> matchedResults = countMessages(timeRange);
 
-        ImmutableList.Builder<CorrelationCountResult> results = ImmutableList.builder();
+        ImmutableList.Builder<CorrelationCountResult> candidates = ImmutableList.builder();
         for (CorrelationCountResult matchedResult: matchedResults) {
-            long firstStreamCount = matchedResult.getFirstStreamCount();
-            long secondStreamCount = matchedResult.getSecondStreamCount();
-            if (!this.correlationCountCheck.thresholdsAreReached(firstStreamCount, secondStreamCount)) {
+            double firstStreamValue = matchedResult.getFirstStreamValue();
+            double secondStreamValue = matchedResult.getSecondStreamValue();
+            if (!this.correlationCountCheck.thresholdsAreReached(firstStreamValue, secondStreamValue)) {
+                continue;
+            }
+            if (!correlatedStreamThresholdsAreReached(matchedResult)) {
                 continue;
             }
-            Map<String, String> groupByFields = associateGroupByFields(matchedResult.getGroupByFields());
-            TimeRange searchTimeRange = buildSearchTimeRange(matchedResult.getTimestamp());
+            candidates.add(matchedResult);
+        }
+        ImmutableList<CorrelationCountResult> thresholdsReached = candidates.build();
+        this.metrics.getThresholdsReached().update(thresholdsReached.size());
 
-            String searchQuery = this.configuration.searchQuery();
-            String additionalSearchQuery = this.configuration.additionalSearchQuery();
-            List<MessageSummary> summariesMainStream = this.correlationCountSearches.searchMessages(searchQuery, groupByFields, this.configuration.stream(), searchTimeRange);
-            List<MessageSummary> summariesAdditionalStream = this.correlationCountSearches.searchMessages(additionalSearchQuery, groupByFields, this.configuration.additionalStream(), searchTimeRange);
+        if (!this.configuration.isOrderChecked()) {
+            // the counts of the aggregations are enough to decide, there is no need to search for the messages
+            return thresholdsReached;
+        }
+        try (Timer.Context ignored = this.metrics.getOrderCheckTime().time()) {
+            // the aggregations may have had too many timestamps to count the messages per timestamp
+            if (this.configuration.isOrderCheckedByAggregations() && haveTimestamps(thresholdsReached)) {
+                return checkAggregatedMessagesOrder(thresholdsReached);
+            }
+            return checkMessagesOrder(thresholdsReached);
+        }
+    }
 
-            if (!this.correlationCountCheck.isRuleTriggered(summariesMainStream, summariesAdditionalStream)) {
-                continue;
+    private boolean correlatedStreamThresholdsAreReached(CorrelationCountResult result) {
+        for (int i = 0; i < this.correlatedStreamChecks.size(); i++) {
+            if (!this.correlatedStreamChecks.get(i).isAdditionalThresholdReached((double) result.getCorrelatedStreamCount(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean haveTimestamps(List<CorrelationCountResult> results) {
+        for (CorrelationCountResult result: results) {
+            if (result.getFirstStreamTimestamps() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ImmutableList<CorrelationCountResult> checkAggregatedMessagesOrder(List<CorrelationCountResult> candidates) {
+        ImmutableList.Builder<CorrelationCountResult> results = ImmutableList.builder();
+        for (CorrelationCountResult candidate: candidates) {
+            if (this.correlationCountCheck.isRuleTriggered(candidate.getFirstStreamTimestamps(), candidate.getSecondStreamTimestamps())) {
+                results.add(candidate);
+            }
+        }
+        return results.build();
+    }
+
+    /*
+     * The groups are checked concurrently: the groups with few messages by batches (the timestamps of all the groups of
+     * a batch are retrieved at once), the others one by one (their timestamps are read page by page).
+     */
+    private ImmutableList<CorrelationCountResult> checkMessagesOrder(List<CorrelationCountResult> candidates) throws EventProcessorException {
+        List<CorrelationCountResult> smallGroups = new ArrayList<>();
+        List<Callable<List<CorrelationCountResult>>> checks = new ArrayList<>();
+        for (CorrelationCountResult candidate: candidates) {
+            if (hasTooManyMessagesForSingleSearch(candidate)) {
+                checks.add(() -> isRuleTriggeredByPages(candidate) ? List.of(candidate) : List.of());
+            } else {
+                smallGroups.add(candidate);
             }
+        }
+        for (List<CorrelationCountResult> batch: Lists.partition(smallGroups, CorrelationCountSearches.BATCH_SIZE)) {
+            checks.add(() -> checkMessagesOrderOfBatch(batch));
+        }
 
-            results.add(matchedResult);
+        // distinct candidates may be equal (same group at different timestamps)
+        Set<CorrelationCountResult> triggered = Sets.newIdentityHashSet();
+        for (List<CorrelationCountResult> checkResults: this.checkExecutor.invokeAll(checks, this.eventDefinition)) {
+            triggered.addAll(checkResults);
+        }
+        // the results are in the order of the candidates, whatever the order in which the checks complete
+        ImmutableList.Builder<CorrelationCountResult> results = ImmutableList.builder();
+        for (CorrelationCountResult candidate: candidates) {
+            if (triggered.contains(candidate)) {
+                results.add(candidate);
+            }
         }
         return results.build();
     }
 
+    /*
+     * The order of each stream with an order (the additional stream and the correlated streams) is checked against the
+     * main stream: the rule is triggered when all of them are in order
+     */
+    private List<CorrelationCountResult> checkMessagesOrderOfBatch(List<CorrelationCountResult> batch) throws EventProcessorException {
+        // the candidates still triggered, and the timestamps of their main stream at the same positions
+        List<CorrelationCountResult> results = new ArrayList<>(batch);
+        List<long[]> timestampsMainStream = new ArrayList<>(this.correlationCountSearches.searchTimestamps(this.configuration.searchQuery(),
+                this.configuration.stream(), batch, this.configuration.searchWithinMs(), this.eventDefinition));
+
+        if (this.correlationCountCheck.isOrderChecked()) {
+            retainTriggered(results, timestampsMainStream, this.correlationCountCheck, this.configuration.additionalSearchQuery(), this.configuration.additionalStream());
+        }
+        for (int i = 0; i < this.correlatedStreamChecks.size() && !results.isEmpty(); i++) {
+            CorrelationCountCheck check = this.correlatedStreamChecks.get(i);
+            if (!check.isOrderChecked()) {
+                continue;
+            }
+            CorrelatedStream correlatedStream = this.configuration.correlatedStreams().get(i);
+            retainTriggered(results, timestampsMainStream, check, correlatedStream.searchQuery(), correlatedStream.stream());
+        }
+        return results;
+    }
+
+    private void retainTriggered(List<CorrelationCountResult> candidates, List<long[]> timestampsMainStream, CorrelationCountCheck check,
+                                 String searchQuery, String stream) throws EventProcessorException {
+        List<long[]> timestampsOtherStream = this.correlationCountSearches.searchTimestamps(searchQuery, stream, candidates,
+                this.configuration.searchWithinMs(), this.eventDefinition);
+        // from the end, so that the positions still to check do not move
+        for (int i = candidates.size() - 1; 0 <= i; i--) {
+            if (!check.isRuleTriggered(timestampsMainStream.get(i), timestampsOtherStream.get(i))) {
+                candidates.remove(i);
+                timestampsMainStream.remove(i);
+            }
+        }
+    }
+
+    private boolean hasTooManyMessagesForSingleSearch(CorrelationCountResult candidate) {
+        if (CorrelationCountSearches.SEARCH_LIMIT < candidate.getFirstStreamCount() || CorrelationCountSearches.SEARCH_LIMIT < candidate.getSecondStreamCount()) {
+            return true;
+        }
+        for (int i = 0; i < this.correlatedStreamChecks.size(); i++) {
+            if (CorrelationCountSearches.SEARCH_LIMIT < candidate.getCorrelatedStreamCount(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * The timestamps of the streams are read page by page, in the order of each check, until it is decided
+     */
+    private boolean isRuleTriggeredByPages(CorrelationCountResult candidate) throws EventProcessorException {
+        if (this.correlationCountCheck.isOrderChecked()
+                && !isRuleTriggeredByPages(candidate, this.correlationCountCheck, this.configuration.additionalSearchQuery(), this.configuration.additionalStream())) {
+            return false;
+        }
+        for (int i = 0; i < this.correlatedStreamChecks.size(); i++) {
+            CorrelationCountCheck check = this.correlatedStreamChecks.get(i);
+            CorrelatedStream correlatedStream = this.configuration.correlatedStreams().get(i);
+            if (check.isOrderChecked() && !isRuleTriggeredByPages(candidate, check, correlatedStream.searchQuery(), correlatedStream.stream())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isRuleTriggeredByPages(CorrelationCountResult candidate, CorrelationCountCheck check, String searchQuery, String stream) throws EventProcessorException {
+        Map<String, String> groupByFields = candidate.getGroupByFields();
+        boolean increasing = check.isSweptByIncreasingTimestamps();
+        long searchWithinMs = this.configuration.searchWithinMs();
+        TimestampCursor timestampsMainStream = this.correlationCountSearches.searchSortedTimestamps(this.configuration.searchQuery(), groupByFields,
+                this.configuration.stream(), candidate.getTimestamp(), searchWithinMs, increasing, this.eventDefinition);
+        TimestampCursor timestampsOtherStream = this.correlationCountSearches.searchSortedTimestamps(searchQuery, groupByFields,
+                stream, candidate.getTimestamp(), searchWithinMs, increasing, this.eventDefinition);
+        return check.isRuleTriggered(timestampsMainStream, timestampsOtherStream);
+    }
+
     private DateTime calculateTimerangeStartFromTimestamp(DateTime to) {
         // see https://github.com/Graylog2/graylog2-server/blob/5.0.0/graylog2-server/src/main/java/org/graylog/events/processor/aggregation/AggregationEventProcessor.java#L284
         return to.minus(this.configuration.searchWithinMs());
     }
-
-    private TimeRange buildSearchTimeRange(DateTime to) {
-        DateTime from = this.calculateTimerangeStartFromTimestamp(to);
-        return AbsoluteRange.create(from, to);
-    }
 }
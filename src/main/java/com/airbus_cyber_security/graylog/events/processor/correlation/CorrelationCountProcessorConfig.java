@@ -20,12 +20,16 @@ package com.airbus_cyber_security.graylog.events.processor.correlation;
 // sources of inspiration: org.graylog.events.processor.aggregation.AggregationEventProcessorConfig
 
 import com.airbus_cyber_security.graylog.events.contentpack.entities.CorrelationCountProcessorConfigEntity;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderCheckType;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SeriesType;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import org.graylog.events.contentpack.entities.EventProcessorConfigEntity;
 import org.graylog.events.processor.EventDefinition;
 import org.graylog.events.processor.EventProcessorConfig;
@@ -56,13 +60,23 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
     private static final String FIELD_ADDITIONAL_THRESHOLD = "additional_threshold";
     private static final String FIELD_THRESHOLD_TYPE = "threshold_type";
     private static final String FIELD_THRESHOLD = "threshold";
+    private static final String FIELD_SERIES = "series";
+    private static final String FIELD_SERIES_FIELD = "series_field";
+    private static final String FIELD_ADDITIONAL_SERIES = "additional_series";
+    private static final String FIELD_ADDITIONAL_SERIES_FIELD = "additional_series_field";
     private static final String FIELD_MESSAGES_ORDER = "messages_order";
+    private static final String FIELD_ORDER_CHECK = "order_check";
     private static final String FIELD_GROUPING_FIELDS = "grouping_fields";
     private static final String FIELD_COMMENT = "comment";
     private static final String FIELD_SEARCH_QUERY = "search_query";
     private static final String FIELD_SEARCH_WITHIN_MS = "search_within_ms";
     private static final String FIELD_EXECUTE_EVERY_MS = "execute_every_ms";
     private static final String FIELD_ADDITIONAL_SEARCH_QUERY = "additional_search_query";
+    private static final String FIELD_INCREMENTAL = "incremental";
+    private static final String FIELD_ADAPTIVE_SCHEDULING = "adaptive_scheduling";
+    private static final String FIELD_MAX_EXECUTE_EVERY_MS = "max_execute_every_ms";
+    private static final String FIELD_CORRELATED_STREAMS = "correlated_streams";
+    private static final String FIELD_SINGLE_AGGREGATION = "single_aggregation";
 
     @JsonProperty(FIELD_STREAM)
     public abstract String stream();
@@ -84,9 +98,26 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
     @JsonProperty(FIELD_THRESHOLD)
     public abstract int threshold();
 
+    // aggregation compared to the threshold of the main stream
+    @JsonProperty(FIELD_SERIES)
+    public abstract SeriesType series();
+
+    // field of the aggregation of the main stream (empty for a count)
+    @JsonProperty(FIELD_SERIES_FIELD)
+    public abstract String seriesField();
+
+    @JsonProperty(FIELD_ADDITIONAL_SERIES)
+    public abstract SeriesType additionalSeries();
+
+    @JsonProperty(FIELD_ADDITIONAL_SERIES_FIELD)
+    public abstract String additionalSeriesField();
+
     @JsonProperty(FIELD_MESSAGES_ORDER)
     public abstract OrderType messagesOrder();
 
+    @JsonProperty(FIELD_ORDER_CHECK)
+    public abstract OrderCheckType orderCheck();
+
     @JsonProperty(FIELD_SEARCH_WITHIN_MS)
     public abstract long searchWithinMs();
 
@@ -105,12 +136,83 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
     @JsonProperty(FIELD_ADDITIONAL_SEARCH_QUERY)
     public abstract String additionalSearchQuery();
 
+    @JsonProperty(FIELD_INCREMENTAL)
+    public abstract boolean incremental();
+
+    @JsonProperty(FIELD_ADAPTIVE_SCHEDULING)
+    public abstract boolean adaptiveScheduling();
+
+    // upper bound of the period between two executions, when the executions are stretched by the adaptive scheduling
+    @JsonProperty(FIELD_MAX_EXECUTE_EVERY_MS)
+    public abstract long maxExecuteEveryMs();
+
+    // streams correlated with the main stream, besides the additional stream
+    @JsonProperty(FIELD_CORRELATED_STREAMS)
+    public abstract ImmutableList<CorrelatedStream> correlatedStreams();
+
+    // aggregate the messages of all the streams with one search (see isAggregatedBySingleSearch)
+    @JsonProperty(FIELD_SINGLE_AGGREGATION)
+    public abstract boolean singleAggregation();
+
     public static Builder builder() {
         return Builder.create();
     }
 
     public abstract Builder toBuilder();
 
+    /*
+     * Whether the order of the messages is checked on the number of messages per timestamp computed by the aggregations
+     * (rather than on the timestamps of the messages retrieved by searches).
+     */
+    @JsonIgnore
+    public boolean isOrderCheckedByAggregations() {
+        return !messagesOrder().equals(OrderType.ANY) && orderCheck().equals(OrderCheckType.AGGREGATION);
+    }
+
+    /*
+     * Whether the order of the messages of the additional stream, or of any correlated stream, is checked
+     */
+    @JsonIgnore
+    public boolean isOrderChecked() {
+        if (!messagesOrder().equals(OrderType.ANY)) {
+            return true;
+        }
+        for (CorrelatedStream correlatedStream: correlatedStreams()) {
+            if (!correlatedStream.messagesOrder().equals(OrderType.ANY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Whether the thresholds of both streams apply to their number of messages
+     */
+    @JsonIgnore
+    public boolean isCountedOnly() {
+        return series().equals(SeriesType.COUNT) && additionalSeries().equals(SeriesType.COUNT);
+    }
+
+    /*
+     * Whether the messages of all the streams are aggregated by a single search, split by stream. A search has only one
+     * query and one set of series: all the streams must share them, otherwise each stream is aggregated separately.
+     */
+    @JsonIgnore
+    public boolean isAggregatedBySingleSearch() {
+        if (!singleAggregation()) {
+            return false;
+        }
+        if (!searchQuery().equals(additionalSearchQuery()) || !series().equals(additionalSeries()) || !seriesField().equals(additionalSeriesField())) {
+            return false;
+        }
+        for (CorrelatedStream correlatedStream: correlatedStreams()) {
+            if (!correlatedStream.searchQuery().equals(searchQuery()) || !series().equals(SeriesType.COUNT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public Optional<EventProcessorSchedulerConfig> toJobSchedulerConfig(EventDefinition eventDefinition, JobSchedulerClock clock) {
         final DateTime now = clock.nowUTC();
@@ -139,7 +241,17 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
         @JsonCreator
         public static Builder create() {
             return new AutoValue_CorrelationCountProcessorConfig.Builder()
-                    .type(TYPE_NAME);
+                    .type(TYPE_NAME)
+                    .orderCheck(OrderCheckType.MESSAGES)
+                    .series(SeriesType.COUNT)
+                    .seriesField("")
+                    .additionalSeries(SeriesType.COUNT)
+                    .additionalSeriesField("")
+                    .incremental(false)
+                    .adaptiveScheduling(false)
+                    .maxExecuteEveryMs(0)
+                    .correlatedStreams(ImmutableList.of())
+                    .singleAggregation(false);
         }
 
         @JsonProperty(FIELD_STREAM)
@@ -160,9 +272,24 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
         @JsonProperty(FIELD_THRESHOLD)
         public abstract Builder threshold(int threshold);
 
+        @JsonProperty(FIELD_SERIES)
+        public abstract Builder series(SeriesType series);
+
+        @JsonProperty(FIELD_SERIES_FIELD)
+        public abstract Builder seriesField(String seriesField);
+
+        @JsonProperty(FIELD_ADDITIONAL_SERIES)
+        public abstract Builder additionalSeries(SeriesType additionalSeries);
+
+        @JsonProperty(FIELD_ADDITIONAL_SERIES_FIELD)
+        public abstract Builder additionalSeriesField(String additionalSeriesField);
+
         @JsonProperty(FIELD_MESSAGES_ORDER)
         public abstract Builder messagesOrder(OrderType messagesOrder);
 
+        @JsonProperty(FIELD_ORDER_CHECK)
+        public abstract Builder orderCheck(OrderCheckType orderCheck);
+
         @JsonProperty(FIELD_SEARCH_WITHIN_MS)
         public abstract Builder searchWithinMs(long searchWithinMs);
 
@@ -181,6 +308,21 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
         @JsonProperty(FIELD_ADDITIONAL_SEARCH_QUERY)
         public abstract Builder additionalSearchQuery(String additionalSearchQuery);
 
+        @JsonProperty(FIELD_INCREMENTAL)
+        public abstract Builder incremental(boolean incremental);
+
+        @JsonProperty(FIELD_ADAPTIVE_SCHEDULING)
+        public abstract Builder adaptiveScheduling(boolean adaptiveScheduling);
+
+        @JsonProperty(FIELD_MAX_EXECUTE_EVERY_MS)
+        public abstract Builder maxExecuteEveryMs(long maxExecuteEveryMs);
+
+        @JsonProperty(FIELD_CORRELATED_STREAMS)
+        public abstract Builder correlatedStreams(ImmutableList<CorrelatedStream> correlatedStreams);
+
+        @JsonProperty(FIELD_SINGLE_AGGREGATION)
+        public abstract Builder singleAggregation(boolean singleAggregation);
+
         public abstract CorrelationCountProcessorConfig build();
     }
 
@@ -214,6 +356,50 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
         if (threshold() < 0) {
             validationResult.addError(FIELD_THRESHOLD, "Threshold must be greater than 0.");
         }
+        if (!series().equals(SeriesType.COUNT) && (seriesField() == null || seriesField().isEmpty())) {
+            validationResult.addError(FIELD_SERIES_FIELD, "Series field is mandatory for the series " + series().getDescription());
+        }
+        if (!additionalSeries().equals(SeriesType.COUNT) && (additionalSeriesField() == null || additionalSeriesField().isEmpty())) {
+            validationResult.addError(FIELD_ADDITIONAL_SERIES_FIELD, "Additional series field is mandatory for the series " + additionalSeries().getDescription());
+        }
+        if (!messagesOrder().equals(OrderType.ANY) && !isCountedOnly()) {
+            validationResult.addError(FIELD_MESSAGES_ORDER, "The messages order can only be checked when both streams count their messages.");
+        }
+        if (incremental() && !isCountedOnly()) {
+            validationResult.addError(FIELD_INCREMENTAL, "Incremental evaluation is only available when both streams count their messages.");
+        }
+        if (incremental() && executeEveryMs() > 0 && searchWithinMs() % executeEveryMs() != 0) {
+            validationResult.addError(FIELD_INCREMENTAL, "Incremental evaluation requires search_within_ms to be a multiple of execute_every_ms.");
+        }
+        if (incremental() && isOrderCheckedByAggregations()) {
+            validationResult.addError(FIELD_INCREMENTAL, "Incremental evaluation is not available when the messages order is checked on aggregations.");
+        }
+        for (CorrelatedStream correlatedStream: correlatedStreams()) {
+            if (correlatedStream.stream() == null || correlatedStream.stream().isEmpty()) {
+                validationResult.addError(FIELD_CORRELATED_STREAMS, "Stream is mandatory for each correlated stream");
+            }
+            if (correlatedStream.thresholdType() == null || correlatedStream.thresholdType().isEmpty()) {
+                validationResult.addError(FIELD_CORRELATED_STREAMS, "Threshold type is mandatory for each correlated stream");
+            }
+            if (correlatedStream.threshold() < 0) {
+                validationResult.addError(FIELD_CORRELATED_STREAMS, "Threshold of each correlated stream must be greater than 0.");
+            }
+            if (!correlatedStream.messagesOrder().equals(OrderType.ANY) && !series().equals(SeriesType.COUNT)) {
+                validationResult.addError(FIELD_CORRELATED_STREAMS, "The messages order of a correlated stream can only be checked when the main stream counts its messages.");
+            }
+        }
+        if (!correlatedStreams().isEmpty() && incremental()) {
+            validationResult.addError(FIELD_INCREMENTAL, "Incremental evaluation is not available with correlated streams.");
+        }
+        if (!correlatedStreams().isEmpty() && isOrderCheckedByAggregations()) {
+            validationResult.addError(FIELD_ORDER_CHECK, "The messages order can not be checked on aggregations with correlated streams.");
+        }
+        if (adaptiveScheduling() && executeEveryMs() > 0 && (maxExecuteEveryMs() < executeEveryMs() || maxExecuteEveryMs() % executeEveryMs() != 0)) {
+            validationResult.addError(FIELD_MAX_EXECUTE_EVERY_MS, "Adaptive scheduling requires max_execute_every_ms to be a multiple of execute_every_ms.");
+        }
+        if (adaptiveScheduling() && maxExecuteEveryMs() > searchWithinMs()) {
+            validationResult.addError(FIELD_MAX_EXECUTE_EVERY_MS, "Adaptive scheduling requires max_execute_every_ms to be at most search_within_ms.");
+        }
         return validationResult;
     }
 
@@ -226,13 +412,23 @@ public abstract class CorrelationCountProcessorConfig implements EventProcessorC
                 .additionalThreshold(additionalThreshold())
                 .thresholdType(ValueReference.of(thresholdType()))
                 .threshold(threshold())
+                .series(ValueReference.of(series()))
+                .seriesField(ValueReference.of(seriesField()))
+                .additionalSeries(ValueReference.of(additionalSeries()))
+                .additionalSeriesField(ValueReference.of(additionalSeriesField()))
                 .messagesOrder(ValueReference.of(messagesOrder()))
+                .orderCheck(ValueReference.of(orderCheck()))
                 .searchWithinMs(searchWithinMs())
                 .executeEveryMs(executeEveryMs())
                 .groupingFields(groupingFields())
                 .comment(ValueReference.of(comment()))
                 .searchQuery(ValueReference.of(searchQuery()))
                 .additionalSearchQuery(ValueReference.of(additionalSearchQuery()))
+                .incremental(incremental())
+                .adaptiveScheduling(adaptiveScheduling())
+                .maxExecuteEveryMs(maxExecuteEveryMs())
+                .correlatedStreams(correlatedStreams())
+                .singleAggregation(singleAggregation())
                 .build();
     }
 }
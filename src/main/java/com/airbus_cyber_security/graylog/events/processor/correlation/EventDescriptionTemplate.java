@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountResult;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SeriesType;
+
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Description of the events of a rule. Everything but the counts (and the values of the series) of the streams only
+ * depends on the configuration: it is built once, and each description only appends the counts.
+ */
+class EventDescriptionTemplate {
+
+    // room for the counts and values of both streams
+    private static final int COUNTS_LENGTH = 80;
+
+    private final String beforeAdditionalStreamCount;
+    // null when the series is a count of the messages
+    private final String beforeAdditionalStreamValue;
+    private final String beforeMainStreamCount;
+    private final String beforeMainStreamValue;
+    private final String afterMainStream;
+    // texts before and after the count of each correlated stream, in the order of the configuration
+    private final String[] beforeCorrelatedStreamCounts;
+    private final String[] afterCorrelatedStreamCounts;
+    private final String end;
+    private final int length;
+
+    EventDescriptionTemplate(CorrelationCountProcessorConfig configuration) {
+        String msgCondition;
+        if (configuration.messagesOrder().equals(OrderType.ANY)) {
+            msgCondition = "and";
+        } else {
+            msgCondition = configuration.messagesOrder().getDescription();
+        }
+
+        this.beforeAdditionalStreamCount = "The additional stream had ";
+        this.beforeAdditionalStreamValue = beforeValue(configuration.additionalSeries(), configuration.additionalSeriesField());
+        this.beforeMainStreamCount = condition(configuration.additionalSeries(), configuration.additionalThresholdType(), configuration.additionalThreshold())
+                + " " + msgCondition + " the main stream had ";
+        this.beforeMainStreamValue = beforeValue(configuration.series(), configuration.seriesField());
+        this.afterMainStream = condition(configuration.series(), configuration.thresholdType(), configuration.threshold());
+        List<CorrelatedStream> correlatedStreams = configuration.correlatedStreams();
+        this.beforeCorrelatedStreamCounts = new String[correlatedStreams.size()];
+        this.afterCorrelatedStreamCounts = new String[correlatedStreams.size()];
+        int correlatedStreamsLength = 0;
+        for (int i = 0; i < correlatedStreams.size(); i++) {
+            CorrelatedStream correlatedStream = correlatedStreams.get(i);
+            this.beforeCorrelatedStreamCounts[i] = ", and the stream " + correlatedStream.stream() + " had ";
+            String after = condition(SeriesType.COUNT, correlatedStream.thresholdType(), correlatedStream.threshold());
+            if (!correlatedStream.messagesOrder().equals(OrderType.ANY)) {
+                after += " " + correlatedStream.messagesOrder().getDescription() + " the main stream";
+            }
+            this.afterCorrelatedStreamCounts[i] = after;
+            correlatedStreamsLength += this.beforeCorrelatedStreamCounts[i].length() + after.length() + COUNTS_LENGTH / 4;
+        }
+        StringBuilder end = new StringBuilder(" in the last ").append(configuration.searchWithinMs()).append(" milliseconds");
+        if (!configuration.groupingFields().isEmpty()) {
+            end.append(" with the same value of the fields ").append(String.join(", ", configuration.groupingFields()));
+        }
+        this.end = end.append(". (Executes every: ").append(configuration.executeEveryMs()).append(" milliseconds)").toString();
+        this.length = this.beforeAdditionalStreamCount.length() + this.beforeMainStreamCount.length() + this.afterMainStream.length()
+                + (this.beforeAdditionalStreamValue == null ? 0 : this.beforeAdditionalStreamValue.length())
+                + (this.beforeMainStreamValue == null ? 0 : this.beforeMainStreamValue.length())
+                + correlatedStreamsLength + this.end.length() + COUNTS_LENGTH;
+    }
+
+    private static String beforeValue(SeriesType series, String field) {
+        if (series.equals(SeriesType.COUNT)) {
+            return null;
+        }
+        return " messages whose " + series.getLabel() + " of " + field + " was ";
+    }
+
+    private static String condition(SeriesType series, String thresholdType, int threshold) {
+        String condition = "with trigger condition " + thresholdType.toLowerCase(Locale.ENGLISH) + " than " + threshold;
+        if (series.equals(SeriesType.COUNT)) {
+            return " messages " + condition + " messages";
+        }
+        return ", " + condition;
+    }
+
+    String render(CorrelationCountResult result) {
+        StringBuilder builder = new StringBuilder(this.length)
+                .append(this.beforeAdditionalStreamCount).append(result.getSecondStreamCount());
+        appendValue(builder, this.beforeAdditionalStreamValue, result.getSecondStreamValue());
+        builder.append(this.beforeMainStreamCount).append(result.getFirstStreamCount());
+        appendValue(builder, this.beforeMainStreamValue, result.getFirstStreamValue());
+        builder.append(this.afterMainStream);
+        for (int i = 0; i < this.beforeCorrelatedStreamCounts.length; i++) {
+            builder.append(this.beforeCorrelatedStreamCounts[i]).append(result.getCorrelatedStreamCount(i)).append(this.afterCorrelatedStreamCounts[i]);
+        }
+        return builder.append(this.end).toString();
+    }
+
+    private static void appendValue(StringBuilder builder, String beforeValue, double value) {
+        if (beforeValue == null) {
+            return;
+        }
+        builder.append(beforeValue);
+        // integral values (cardinalities, sums of integers...) are written without decimals
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            builder.append((long) value);
+        } else {
+            builder.append(value);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Metrics of a correlation rule. They are all named
+ * com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessor.<event definition id>.<metric>
+ * where metric is one of:
+ * - execution.time: duration of the executions
+ * - aggregation.main_stream.time, aggregation.additional_stream.time: duration of the aggregation searches
+ * - aggregation.main_stream.buckets, aggregation.additional_stream.buckets: number of buckets returned by the aggregations
+ * - aggregation.correlated_stream_<index>.time, aggregation.correlated_stream_<index>.buckets: the same for each correlated stream
+ * - aggregation.all_streams.time, aggregation.all_streams.buckets: the same for the single aggregation of all the streams
+ * - groups.thresholds_reached: number of groups which reached both thresholds, for each execution
+ * - message_search.time: duration (and number) of the message searches
+ * - order_check.time: duration of the order checks (including the message searches)
+ * - events.emitted: number of events emitted, for each execution
+ * - schedule.lag: delay between the end of the period of each execution and the start of the execution, in milliseconds
+ * - schedule.skipped: number of executions skipped because their period was already evaluated (adaptive scheduling)
+ */
+public class RuleMetrics {
+
+    private final MetricRegistry metricRegistry;
+    private final String eventDefinitionId;
+    private final Timer executionTime;
+    private final StreamMetrics mainStream;
+    private final StreamMetrics additionalStream;
+    private final StreamMetrics allStreams;
+    private final Histogram thresholdsReached;
+    private final Timer messageSearchTime;
+    private final Timer orderCheckTime;
+    private final Histogram eventsEmitted;
+    private final Histogram lag;
+    private final Counter skippedExecutions;
+    private final ConcurrentMap<Integer, StreamMetrics> correlatedStreams = new ConcurrentHashMap<>();
+
+    RuleMetrics(MetricRegistry metricRegistry, String eventDefinitionId) {
+        this.metricRegistry = metricRegistry;
+        this.eventDefinitionId = eventDefinitionId;
+        this.executionTime = metricRegistry.timer(name(eventDefinitionId, "execution", "time"));
+        this.mainStream = new StreamMetrics(metricRegistry, eventDefinitionId, "main_stream");
+        this.additionalStream = new StreamMetrics(metricRegistry, eventDefinitionId, "additional_stream");
+        this.allStreams = new StreamMetrics(metricRegistry, eventDefinitionId, "all_streams");
+        this.thresholdsReached = metricRegistry.histogram(name(eventDefinitionId, "groups", "thresholds_reached"));
+        this.messageSearchTime = metricRegistry.timer(name(eventDefinitionId, "message_search", "time"));
+        this.orderCheckTime = metricRegistry.timer(name(eventDefinitionId, "order_check", "time"));
+        this.eventsEmitted = metricRegistry.histogram(name(eventDefinitionId, "events", "emitted"));
+        this.lag = metricRegistry.histogram(name(eventDefinitionId, "schedule", "lag"));
+        this.skippedExecutions = metricRegistry.counter(name(eventDefinitionId, "schedule", "skipped"));
+    }
+
+    /*
+     * Prefix of the names of all the metrics of the rule
+     */
+    static String prefix(String eventDefinitionId) {
+        return MetricRegistry.name(CorrelationCountProcessor.class, eventDefinitionId) + ".";
+    }
+
+    private static String name(String eventDefinitionId, String... names) {
+        String[] fullNames = new String[names.length + 1];
+        fullNames[0] = eventDefinitionId;
+        System.arraycopy(names, 0, fullNames, 1, names.length);
+        return MetricRegistry.name(CorrelationCountProcessor.class, fullNames);
+    }
+
+    public Timer getExecutionTime() {
+        return this.executionTime;
+    }
+
+    public StreamMetrics getMainStream() {
+        return this.mainStream;
+    }
+
+    public StreamMetrics getAdditionalStream() {
+        return this.additionalStream;
+    }
+
+    public StreamMetrics getAllStreams() {
+        return this.allStreams;
+    }
+
+    /*
+     * The number of correlated streams depends on the configuration, their metrics are registered on first use
+     */
+    public StreamMetrics getCorrelatedStream(int index) {
+        return this.correlatedStreams.computeIfAbsent(index, key -> new StreamMetrics(this.metricRegistry, this.eventDefinitionId, "correlated_stream_" + key));
+    }
+
+    public Histogram getThresholdsReached() {
+        return this.thresholdsReached;
+    }
+
+    public Timer getMessageSearchTime() {
+        return this.messageSearchTime;
+    }
+
+    public Timer getOrderCheckTime() {
+        return this.orderCheckTime;
+    }
+
+    public Histogram getEventsEmitted() {
+        return this.eventsEmitted;
+    }
+
+    public Histogram getLag() {
+        return this.lag;
+    }
+
+    public Counter getSkippedExecutions() {
+        return this.skippedExecutions;
+    }
+
+    /*
+     * Metrics of the aggregations of one of the streams of the rule
+     */
+    public static class StreamMetrics {
+
+        private final Timer aggregationTime;
+        private final Histogram aggregationBuckets;
+
+        StreamMetrics(MetricRegistry metricRegistry, String eventDefinitionId, String stream) {
+            this.aggregationTime = metricRegistry.timer(name(eventDefinitionId, "aggregation", stream, "time"));
+            this.aggregationBuckets = metricRegistry.histogram(name(eventDefinitionId, "aggregation", stream, "buckets"));
+        }
+
+        public Timer getAggregationTime() {
+            return this.aggregationTime;
+        }
+
+        public Histogram getAggregationBuckets() {
+            return this.aggregationBuckets;
+        }
+    }
+}
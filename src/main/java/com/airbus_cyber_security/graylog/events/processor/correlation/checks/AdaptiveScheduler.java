@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import jakarta.inject.Singleton;
+
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Stretches the period between the executions of the rules with adaptive scheduling, when their executions last
+ * longer than this period.
+ * The graylog scheduler runs the executions every executeEveryMs, whatever their duration: a rule whose executions
+ * are slower falls behind without bound. So when the previous execution lasted longer than executeEveryMs and the
+ * rule is late, the execution evaluates the rule at a later end, up to maxExecuteEveryMs after the end of the previous
+ * evaluation (and never in the future). The executions whose end has already been evaluated are then skipped.
+ * The executions are kept aligned on executeEveryMs, so that the sliding windows of the incremental rules remain valid.
+ * Processors are created for each execution, so the state of the rules has to be kept outside of them.
+ */
+@Singleton
+public class AdaptiveScheduler {
+
+    private final ConcurrentMap<String, RuleSchedule> schedules = new ConcurrentHashMap<>();
+
+    /*
+     * Returns the end (in epoch milliseconds) at which the execution planned to end at the given end evaluates the rule,
+     * or nothing when this end has already been evaluated.
+     */
+    public OptionalLong planEnd(String eventDefinitionId, CorrelationCountProcessorConfig configuration, long end, long now) {
+        RuleSchedule schedule = this.schedules.get(eventDefinitionId);
+        if (schedule == null) {
+            return OptionalLong.of(end);
+        }
+        if (end <= schedule.evaluatedEnd) {
+            return OptionalLong.empty();
+        }
+        long hop = configuration.executeEveryMs();
+        if (schedule.duration <= hop) {
+            return OptionalLong.of(end);
+        }
+        // the period since the previous evaluation should last as long as an execution, but the rule can not be
+        // evaluated in the future, nor the period exceed its bound
+        long wantedHops = Math.ceilDiv(schedule.evaluatedEnd + schedule.duration - end, hop);
+        long availableHops = Math.floorDiv(now - end, hop);
+        long allowedHops = Math.floorDiv(schedule.evaluatedEnd + configuration.maxExecuteEveryMs() - end, hop);
+        long extraHops = Math.max(0, Math.min(wantedHops, Math.min(availableHops, allowedHops)));
+        return OptionalLong.of(end + extraHops * hop);
+    }
+
+    /*
+     * Records the end at which the rule was evaluated, and the start and the end of the execution (all in epoch
+     * milliseconds)
+     */
+    public void recordExecution(String eventDefinitionId, CorrelationCountProcessorConfig configuration, long evaluatedEnd, long start, long now) {
+        this.schedules.put(eventDefinitionId, new RuleSchedule(evaluatedEnd, now - start, now, configuration.searchWithinMs()));
+    }
+
+    /*
+     * Drops the state of the rules which did not run for longer than their window, at the given time (in epoch
+     * milliseconds), for instance those of rules which were disabled or deleted.
+     */
+    public void evictExpired(long now) {
+        this.schedules.values().removeIf(schedule -> schedule.executedAt + schedule.windowSize < now);
+    }
+
+    private static class RuleSchedule {
+        private final long evaluatedEnd;
+        private final long duration;
+        private final long executedAt;
+        private final long windowSize;
+
+        RuleSchedule(long evaluatedEnd, long duration, long executedAt, long windowSize) {
+            this.evaluatedEnd = evaluatedEnd;
+            this.duration = duration;
+            this.executedAt = executedAt;
+            this.windowSize = windowSize;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.CorrelationCountConfiguration;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.events.processor.aggregation.AggregationResult;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cache of the aggregation results, shared by all correlation count processors of the node.
+ * Rules on the same stream, with the same search query and grouping fields, which run at the same time, thus
+ * share a single aggregation search. Concurrent searches of the same aggregation wait for the first one.
+ * The results are immutable and keyed by their absolute time range, so they are only kept a short time to bound
+ * the memory they use. A result misses the messages indexed after its search, so an evaluation of the same period
+ * within its time to live does not see the late messages: the cache is disabled unless its size is configured.
+ */
+@Singleton
+public class AggregationCache {
+
+    private final Cache<Key, AggregationResult> cache;
+
+    @Inject
+    public AggregationCache(@Named(CorrelationCountConfiguration.AGGREGATION_CACHE_SIZE) int maximumSize,
+                            @Named(CorrelationCountConfiguration.AGGREGATION_CACHE_TTL) Duration timeToLive,
+                            MetricRegistry metricRegistry) {
+        if (maximumSize <= 0) {
+            this.cache = null;
+            return;
+        }
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive.toMilliseconds(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        metricRegistry.register(MetricRegistry.name(AggregationCache.class, "hits"), (Gauge<Long>) () -> this.cache.stats().hitCount());
+        metricRegistry.register(MetricRegistry.name(AggregationCache.class, "misses"), (Gauge<Long>) () -> this.cache.stats().missCount());
+        metricRegistry.register(MetricRegistry.name(AggregationCache.class, "evictions"), (Gauge<Long>) () -> this.cache.stats().evictionCount());
+        metricRegistry.register(MetricRegistry.name(AggregationCache.class, "size"), (Gauge<Long>) this.cache::size);
+    }
+
+    /*
+     * Returns the cached result of the aggregation, or runs the search and caches its result.
+     */
+    public AggregationResult get(Key key, Callable<AggregationResult> search, EventDefinition eventDefinition) throws EventProcessorException {
+        try {
+            if (this.cache == null) {
+                return search.call();
+            }
+            return this.cache.get(key, search);
+        } catch (EventProcessorException e) {
+            throw e;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof EventProcessorException cause) {
+                throw cause;
+            }
+            throw new EventProcessorException("Couldn't aggregate messages for: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e.getCause());
+        } catch (Exception e) {
+            throw new EventProcessorException("Couldn't aggregate messages for: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e);
+        }
+    }
+
+    /*
+     * Everything the aggregation search depends on: the date range buckets are determined by the time range,
+     * searchWithinMs and executeEveryMs.
+     */
+    @AutoValue
+    public static abstract class Key {
+
+        public abstract String stream();
+
+        public abstract String searchQuery();
+
+        public abstract ImmutableList<String> groupBy();
+
+        public abstract SeriesType seriesType();
+
+        public abstract String seriesField();
+
+        public abstract TimeRange timeRange();
+
+        public abstract long searchWithinMs();
+
+        public abstract long executeEveryMs();
+
+        public static Key create(String stream, String searchQuery, List<String> groupBy, SeriesType seriesType, String seriesField,
+                                 TimeRange timeRange, long searchWithinMs, long executeEveryMs) {
+            return new AutoValue_AggregationCache_Key(stream, searchQuery, ImmutableList.copyOf(groupBy), seriesType, seriesField,
+                    timeRange, searchWithinMs, executeEveryMs);
+        }
+    }
+}
@@ -17,13 +17,9 @@
 
 package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
 
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelatedStream;
 import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
-import org.graylog2.plugin.MessageSummary;
-import org.joda.time.DateTime;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import org.graylog.events.processor.EventProcessorException;
 
 public class CorrelationCountCheck {
 
@@ -37,52 +33,143 @@ public class CorrelationCountCheck {
         this.messagesOrder = configuration.messagesOrder();
     }
 
-    public boolean thresholdsAreReached(long mainCount, long additionalCount) {
-        return this.mainStreamThreshold.isReached(mainCount) && this.additionalStreamThreshold.isReached(additionalCount);
+    /*
+     * Check of a stream correlated with the main stream, which then plays the part of the additional stream
+     */
+    public CorrelationCountCheck(CorrelationCountProcessorConfig configuration, CorrelatedStream correlatedStream) {
+        this.mainStreamThreshold = new Threshold(configuration.thresholdType(), configuration.threshold());
+        this.additionalStreamThreshold = new Threshold(correlatedStream.thresholdType(), correlatedStream.threshold());
+        this.messagesOrder = correlatedStream.messagesOrder();
     }
 
-    private List<DateTime> getListOrderTimestamp(List<MessageSummary> summaries) {
-        List<DateTime> listDate = new ArrayList<>();
-        for (MessageSummary messageSummary: summaries) {
-            listDate.add(messageSummary.getTimestamp());
-        }
-        Collections.sort(listDate);
-        if (this.messagesOrder.equals(OrderType.AFTER)) {
-            Collections.reverse(listDate);
-        }
-        return listDate;
+    /*
+     * The values are the results of the series of each stream (their number of messages by default)
+     */
+    public boolean thresholdsAreReached(double mainValue, double additionalValue) {
+        return this.mainStreamThreshold.isReached(mainValue) && this.additionalStreamThreshold.isReached(additionalValue);
+    }
+
+    public boolean isAdditionalThresholdReached(double additionalValue) {
+        return this.additionalStreamThreshold.isReached(additionalValue);
+    }
+
+    public boolean isOrderChecked() {
+        return !this.messagesOrder.equals(OrderType.ANY);
     }
 
     /*
      * Check that the Second Stream is before or after the first stream
+     *
+     * The messages of the first stream are taken in order (by increasing timestamps for BEFORE, by decreasing timestamps
+     * for AFTER). For each of them, the count of the first stream is the number of messages from this one on and the
+     * count of the second stream is the number of messages strictly before (respectively after) it.
+     * Since both counts evolve monotonically, the sorted timestamps of both streams are swept only once.
+     * Messages with the same timestamp are handled together: the count of the first stream then ranges over all the
+     * values it takes for each of these messages.
      */
-    private boolean checkOrderSecondStream(List<MessageSummary> summariesFirstStream, List<MessageSummary> summariesSecondStream) {
-        int countFirstStream = summariesFirstStream.size();
-        List<DateTime> listDateFirstStream = getListOrderTimestamp(summariesFirstStream);
-        List<DateTime> listDateSecondStream = getListOrderTimestamp(summariesSecondStream);
-
-        for (DateTime dateFirstStream: listDateFirstStream) {
-            int countSecondStream = 0;
-            for (DateTime dateSecondStream: listDateSecondStream) {
-                if ((this.messagesOrder.equals(OrderType.BEFORE) && dateSecondStream.isBefore(dateFirstStream)) ||
-                        (this.messagesOrder.equals(OrderType.AFTER) && dateSecondStream.isAfter(dateFirstStream))) {
-                    countSecondStream++;
-                } else {
-                    break;
-                }
+    private boolean checkOrderSecondStream(TimestampHistogram firstStream, TimestampHistogram secondStream) {
+        if (this.messagesOrder.equals(OrderType.BEFORE)) {
+            return checkSecondStreamBefore(firstStream, secondStream);
+        }
+        return checkSecondStreamAfter(firstStream, secondStream);
+    }
+
+    private boolean checkSecondStreamBefore(TimestampHistogram firstStream, TimestampHistogram secondStream) {
+        long countFirstStream = firstStream.getTotal();
+        long countSecondStream = 0;
+        int secondIndex = 0;
+        for (int i = 0; i < firstStream.size(); i++) {
+            long timestamp = firstStream.getTimestamp(i);
+            while (secondIndex < secondStream.size() && secondStream.getTimestamp(secondIndex) < timestamp) {
+                countSecondStream += secondStream.getCount(secondIndex);
+                secondIndex++;
             }
-            if (thresholdsAreReached(countFirstStream, countSecondStream)) {
+            long count = firstStream.getCount(i);
+            if (thresholdsAreReached(countFirstStream - count + 1, countFirstStream, countSecondStream)) {
                 return true;
             }
-            countFirstStream--;
+            countFirstStream -= count;
         }
         return false;
     }
 
-    public boolean isRuleTriggered(List<MessageSummary> summariesMainStream, List<MessageSummary> summariesAdditionalStream) {
+    private boolean checkSecondStreamAfter(TimestampHistogram firstStream, TimestampHistogram secondStream) {
+        long countFirstStream = firstStream.getTotal();
+        long countSecondStream = 0;
+        int secondIndex = secondStream.size() - 1;
+        for (int i = firstStream.size() - 1; 0 <= i; i--) {
+            long timestamp = firstStream.getTimestamp(i);
+            while (0 <= secondIndex && timestamp < secondStream.getTimestamp(secondIndex)) {
+                countSecondStream += secondStream.getCount(secondIndex);
+                secondIndex--;
+            }
+            long count = firstStream.getCount(i);
+            if (thresholdsAreReached(countFirstStream - count + 1, countFirstStream, countSecondStream)) {
+                return true;
+            }
+            countFirstStream -= count;
+        }
+        return false;
+    }
+
+    private boolean thresholdsAreReached(long minimumMainCount, long maximumMainCount, long additionalCount) {
+        return this.mainStreamThreshold.isReachedBetween(minimumMainCount, maximumMainCount) && this.additionalStreamThreshold.isReached((double) additionalCount);
+    }
+
+    /*
+     * The timestamps are in epoch milliseconds, in any order.
+     */
+    public boolean isRuleTriggered(long[] timestampsMainStream, long[] timestampsAdditionalStream) {
+        if (this.messagesOrder.equals(OrderType.ANY)) {
+            return true;
+        }
+        return checkOrderSecondStream(TimestampHistogram.of(timestampsMainStream), TimestampHistogram.of(timestampsAdditionalStream));
+    }
+
+    public boolean isRuleTriggered(TimestampHistogram timestampsMainStream, TimestampHistogram timestampsAdditionalStream) {
         if (this.messagesOrder.equals(OrderType.ANY)) {
             return true;
         }
-        return checkOrderSecondStream(summariesMainStream, summariesAdditionalStream);
+        return checkOrderSecondStream(timestampsMainStream, timestampsAdditionalStream);
+    }
+
+    /*
+     * Same sweep as checkOrderSecondStream, on timestamps which are read only as needed. The timestamps of both streams
+     * must be sorted in the order of the sweep: by increasing timestamps for BEFORE, by decreasing timestamps for AFTER
+     * (see isSweptByIncreasingTimestamps).
+     * Stops as soon as the result is decided (see OrderCheckEvaluator), without reading the remaining timestamps.
+     */
+    public boolean isRuleTriggered(TimestampCursor timestampsMainStream, TimestampCursor timestampsAdditionalStream) throws EventProcessorException {
+        if (this.messagesOrder.equals(OrderType.ANY)) {
+            return true;
+        }
+        boolean increasing = isSweptByIncreasingTimestamps();
+        OrderCheckEvaluator evaluator = new OrderCheckEvaluator(this.mainStreamThreshold, this.additionalStreamThreshold,
+                timestampsMainStream.getTotal(), timestampsAdditionalStream.getTotal());
+        while (evaluator.getState() == OrderCheckEvaluator.State.UNDECIDED && timestampsMainStream.hasNext()) {
+            long timestamp = timestampsMainStream.next();
+            long count = 1;
+            while (timestampsMainStream.hasNext() && timestampsMainStream.peek() == timestamp) {
+                timestampsMainStream.next();
+                count++;
+            }
+            while (timestampsAdditionalStream.hasNext() && isStrictlyBefore(timestampsAdditionalStream.peek(), timestamp, increasing)) {
+                timestampsAdditionalStream.next();
+                evaluator.addSecondStreamMessage();
+            }
+            evaluator.addFirstStreamMessages(count);
+        }
+        return evaluator.getState() == OrderCheckEvaluator.State.TRIGGERED;
+    }
+
+    private boolean isStrictlyBefore(long timestamp, long reference, boolean increasing) {
+        if (increasing) {
+            return timestamp < reference;
+        }
+        return reference < timestamp;
+    }
+
+    public boolean isSweptByIncreasingTimestamps() {
+        return this.messagesOrder.equals(OrderType.BEFORE);
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.CorrelationCountConfiguration;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Runs the checks of the groups of the correlation count processors concurrently, on virtual threads.
+ * The checks mostly wait for their searches: the number of concurrent checks is bounded both for each execution of a
+ * rule (so that a rule with many groups does not take all the search capacity) and for all the rules of the node.
+ */
+@Singleton
+public class CorrelationCountCheckExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int threadsPerRule;
+
+    @Inject
+    public CorrelationCountCheckExecutor(@Named(CorrelationCountConfiguration.CHECK_THREADS) int threads,
+                                         @Named(CorrelationCountConfiguration.CHECK_THREADS_PER_RULE) int threadsPerRule) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("correlation-count-check-", 0).factory());
+        this.permits = new Semaphore(threads);
+        this.threadsPerRule = threadsPerRule;
+    }
+
+    /*
+     * Runs all the checks and returns their results in the order of the checks.
+     * As soon as one check fails, no other check is started, the running ones are cancelled and the first failure is
+     * propagated.
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> checks, EventDefinition eventDefinition) throws EventProcessorException {
+        Semaphore rulePermits = new Semaphore(this.threadsPerRule);
+        AtomicReference<Exception> firstFailure = new AtomicReference<>();
+        List<Future<T>> futures = new ArrayList<>(checks.size());
+        try {
+            for (Callable<T> check: checks) {
+                rulePermits.acquire();
+                if (firstFailure.get() != null) {
+                    throw toEventProcessorException(firstFailure.get(), eventDefinition);
+                }
+                futures.add(this.executor.submit(bound(check, rulePermits, firstFailure)));
+            }
+            List<T> results = new ArrayList<>(checks.size());
+            for (Future<T> future: futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable failure = firstFailure.get() == null ? e.getCause() : firstFailure.get();
+                    throw toEventProcessorException(failure, eventDefinition);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while checking the groups of: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e);
+        } catch (RejectedExecutionException e) {
+            throw new EventProcessorException("Couldn't schedule the checks of the groups of: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e);
+        } finally {
+            // has no effect on the checks which are already completed
+            for (Future<T> future: futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private <T> Callable<T> bound(Callable<T> check, Semaphore rulePermits, AtomicReference<Exception> firstFailure) {
+        return () -> {
+            try {
+                this.permits.acquire();
+                try {
+                    return check.call();
+                } finally {
+                    this.permits.release();
+                }
+            } catch (Exception e) {
+                firstFailure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                rulePermits.release();
+            }
+        };
+    }
+
+    /*
+     * Interrupts the running checks, the checks submitted afterwards are rejected
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    private EventProcessorException toEventProcessorException(Throwable failure, EventDefinition eventDefinition) {
+        if (failure instanceof EventProcessorException eventProcessorException) {
+            return eventProcessorException;
+        }
+        return new EventProcessorException("Couldn't check the groups of: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, failure);
+    }
+}
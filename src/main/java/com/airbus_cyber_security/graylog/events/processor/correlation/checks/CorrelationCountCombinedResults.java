@@ -19,64 +19,262 @@ package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
 
 import com.google.common.collect.ImmutableList;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/*
+ * Table of the aggregation results of both streams.
+ * Each group of fields is interned into an int identifier. Each row holds the counts of both streams for a
+ * (timestamp, group) pair, and the results of their series, in primitive columns. The rows of a group are chained, since there are only a few
+ * timestamps per group. The values of the group by fields of a group are shared by all its results.
+ */
 public class CorrelationCountCombinedResults {
 
-    private final TimestampGroupByMap<ImmutableList<String>> groupingFields;
-    private final TimestampGroupByMap<Long> firstStreamCounts;
-    private final TimestampGroupByMap<Long> secondStreamCounts;
+    private static final int NO_ROW = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final GroupByFields.Layout layout;
+    private final boolean withTimestamps;
+
+    private final Map<GroupKey, Integer> groupIdentifiers;
+    private final List<GroupKey> groups;
+    private int[] groupFirstRows;
+
+    private int rowCount;
+    private long[] timestamps;
+    private int[] rowGroups;
+    private int[] nextRows;
+    private long[] firstStreamCounts;
+    private long[] secondStreamCounts;
+    private double[] firstStreamValues;
+    private double[] secondStreamValues;
+    // counts of the correlated streams, by correlated stream then by row
+    private final long[][] correlatedStreamCounts;
+    private final BitSet[] hasCorrelatedStreamCount;
+    private final BitSet hasFirstStreamCount;
+    private final BitSet hasSecondStreamCount;
+    private TimestampHistogram.Builder[] firstStreamTimestamps;
+    private TimestampHistogram.Builder[] secondStreamTimestamps;
 
-    CorrelationCountCombinedResults() {
-        this.groupingFields = new TimestampGroupByMap<>();
-        this.firstStreamCounts = new TimestampGroupByMap<>();
-        this.secondStreamCounts = new TimestampGroupByMap<>();
+    CorrelationCountCombinedResults(GroupByFields.Layout layout, boolean withTimestamps) {
+        this(layout, 0, withTimestamps);
     }
 
-    private String buildTermKey(ImmutableList<String> groupByFields) {
-        StringBuilder builder = new StringBuilder();
-        for (String field: groupByFields) {
-            if (0 < builder.length()) {
-                builder.append(" - ");
+    /*
+     * layout: names of the group by fields of the results
+     * correlatedStreamCount: number of streams correlated with the main stream, besides the additional stream
+     * withTimestamps: whether the results are built with the number of messages per timestamp
+     */
+    CorrelationCountCombinedResults(GroupByFields.Layout layout, int correlatedStreamCount, boolean withTimestamps) {
+        this.layout = layout;
+        this.withTimestamps = withTimestamps;
+        this.groupIdentifiers = new HashMap<>();
+        this.groups = new ArrayList<>();
+        this.groupFirstRows = new int[INITIAL_CAPACITY];
+        this.rowCount = 0;
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.rowGroups = new int[INITIAL_CAPACITY];
+        this.nextRows = new int[INITIAL_CAPACITY];
+        this.firstStreamCounts = new long[INITIAL_CAPACITY];
+        this.secondStreamCounts = new long[INITIAL_CAPACITY];
+        this.firstStreamValues = new double[INITIAL_CAPACITY];
+        this.secondStreamValues = new double[INITIAL_CAPACITY];
+        this.hasFirstStreamCount = new BitSet();
+        this.hasSecondStreamCount = new BitSet();
+        this.correlatedStreamCounts = new long[correlatedStreamCount][INITIAL_CAPACITY];
+        this.hasCorrelatedStreamCount = new BitSet[correlatedStreamCount];
+        for (int stream = 0; stream < correlatedStreamCount; stream++) {
+            this.hasCorrelatedStreamCount[stream] = new BitSet();
+        }
+        if (withTimestamps) {
+            this.firstStreamTimestamps = new TimestampHistogram.Builder[INITIAL_CAPACITY];
+            this.secondStreamTimestamps = new TimestampHistogram.Builder[INITIAL_CAPACITY];
+        }
+    }
+
+    private int internGroup(ImmutableList<String> groupByFields) {
+        GroupKey key = GroupKey.of(groupByFields);
+        Integer groupIdentifier = this.groupIdentifiers.get(key);
+        if (groupIdentifier != null) {
+            return groupIdentifier;
+        }
+        int newGroupIdentifier = this.groups.size();
+        this.groupIdentifiers.put(key, newGroupIdentifier);
+        this.groups.add(key);
+        if (newGroupIdentifier == this.groupFirstRows.length) {
+            this.groupFirstRows = Arrays.copyOf(this.groupFirstRows, 2 * newGroupIdentifier);
+        }
+        this.groupFirstRows[newGroupIdentifier] = NO_ROW;
+        return newGroupIdentifier;
+    }
+
+    /*
+     * Returns the row of the (timestamp, group) pair, creates it when it does not exist yet
+     */
+    private int findOrAddRow(DateTime timestamp, ImmutableList<String> groupByFields) {
+        int groupIdentifier = internGroup(groupByFields);
+        long millis = timestamp.getMillis();
+        int lastRow = NO_ROW;
+        for (int row = this.groupFirstRows[groupIdentifier]; row != NO_ROW; row = this.nextRows[row]) {
+            if (this.timestamps[row] == millis) {
+                return row;
             }
-            builder.append(field);
+            lastRow = row;
+        }
+
+        int row = this.rowCount;
+        if (row == this.timestamps.length) {
+            grow(2 * row);
+        }
+        this.rowCount++;
+        this.timestamps[row] = millis;
+        this.rowGroups[row] = groupIdentifier;
+        this.nextRows[row] = NO_ROW;
+        if (lastRow == NO_ROW) {
+            this.groupFirstRows[groupIdentifier] = row;
+        } else {
+            this.nextRows[lastRow] = row;
+        }
+        return row;
+    }
+
+    private void grow(int capacity) {
+        this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+        this.rowGroups = Arrays.copyOf(this.rowGroups, capacity);
+        this.nextRows = Arrays.copyOf(this.nextRows, capacity);
+        this.firstStreamCounts = Arrays.copyOf(this.firstStreamCounts, capacity);
+        this.secondStreamCounts = Arrays.copyOf(this.secondStreamCounts, capacity);
+        this.firstStreamValues = Arrays.copyOf(this.firstStreamValues, capacity);
+        this.secondStreamValues = Arrays.copyOf(this.secondStreamValues, capacity);
+        for (int stream = 0; stream < this.correlatedStreamCounts.length; stream++) {
+            this.correlatedStreamCounts[stream] = Arrays.copyOf(this.correlatedStreamCounts[stream], capacity);
+        }
+        if (this.withTimestamps) {
+            this.firstStreamTimestamps = Arrays.copyOf(this.firstStreamTimestamps, capacity);
+            this.secondStreamTimestamps = Arrays.copyOf(this.secondStreamTimestamps, capacity);
         }
-        return builder.toString();
     }
 
     void addFirstStreamResult(DateTime timestamp, ImmutableList<String> groupByFields, long count) {
-        String key = buildTermKey(groupByFields);
+        addFirstStreamResult(timestamp, groupByFields, count, (double) count);
+    }
 
-        this.groupingFields.put(timestamp, key, groupByFields);
-        if (this.firstStreamCounts.containsKey(timestamp, key)) {
-            throw new IllegalArgumentException("Unexpected duplicated key in stream: " + timestamp + ", " + key);
+    /*
+     * The value is the result of the series of the stream
+     */
+    void addFirstStreamResult(DateTime timestamp, ImmutableList<String> groupByFields, long count, double value) {
+        int row = findOrAddRow(timestamp, groupByFields);
+        if (this.hasFirstStreamCount.get(row)) {
+            throw new IllegalArgumentException("Unexpected duplicated key in stream: " + timestamp + ", " + groupByFields);
         }
-        this.firstStreamCounts.put(timestamp, key, count);
+        this.hasFirstStreamCount.set(row);
+        this.firstStreamCounts[row] = count;
+        this.firstStreamValues[row] = value;
     }
 
     void addSecondStreamResult(DateTime timestamp, ImmutableList<String> groupByFields, long count) {
-        String key = buildTermKey(groupByFields);
+        addSecondStreamResult(timestamp, groupByFields, count, (double) count);
+    }
+
+    /*
+     * The value is the result of the series of the stream
+     */
+    void addSecondStreamResult(DateTime timestamp, ImmutableList<String> groupByFields, long count, double value) {
+        int row = findOrAddRow(timestamp, groupByFields);
+        if (this.hasSecondStreamCount.get(row)) {
+            throw new IllegalArgumentException("Unexpected duplicated key in additional stream: " + timestamp + ", " + groupByFields);
+        }
+        this.hasSecondStreamCount.set(row);
+        this.secondStreamCounts[row] = count;
+        this.secondStreamValues[row] = value;
+    }
 
-        this.groupingFields.put(timestamp, key, groupByFields);
-        if (this.secondStreamCounts.containsKey(timestamp, key)) {
-            throw new IllegalArgumentException("Unexpected duplicated key in additional stream: " + timestamp + ", " + key);
+    /*
+     * Adds the number of messages of the correlated stream at the given index (in the configuration)
+     */
+    void addCorrelatedStreamResult(int stream, DateTime timestamp, ImmutableList<String> groupByFields, long count) {
+        int row = findOrAddRow(timestamp, groupByFields);
+        if (this.hasCorrelatedStreamCount[stream].get(row)) {
+            throw new IllegalArgumentException("Unexpected duplicated key in correlated stream " + stream + ": " + timestamp + ", " + groupByFields);
         }
-        this.secondStreamCounts.put(timestamp, key, count);
+        this.hasCorrelatedStreamCount[stream].set(row);
+        this.correlatedStreamCounts[stream][row] = count;
     }
 
+    /*
+     * Adds the number of messages of the first stream at a given messagesTimestamp (in epoch milliseconds).
+     * The count of the group is the sum of all these numbers.
+     */
+    void addFirstStreamTimestampResult(DateTime timestamp, ImmutableList<String> groupByFields, long messagesTimestamp, long count) {
+        int row = findOrAddRow(timestamp, groupByFields);
+        this.firstStreamCounts[row] += count;
+        this.firstStreamValues[row] += count;
+        if (this.firstStreamTimestamps[row] == null) {
+            this.firstStreamTimestamps[row] = new TimestampHistogram.Builder();
+        }
+        this.firstStreamTimestamps[row].add(messagesTimestamp, count);
+    }
+
+    /*
+     * Adds the number of messages of the second stream at a given messagesTimestamp (in epoch milliseconds).
+     * The count of the group is the sum of all these numbers.
+     */
+    void addSecondStreamTimestampResult(DateTime timestamp, ImmutableList<String> groupByFields, long messagesTimestamp, long count) {
+        int row = findOrAddRow(timestamp, groupByFields);
+        this.secondStreamCounts[row] += count;
+        this.secondStreamValues[row] += count;
+        if (this.secondStreamTimestamps[row] == null) {
+            this.secondStreamTimestamps[row] = new TimestampHistogram.Builder();
+        }
+        this.secondStreamTimestamps[row].add(messagesTimestamp, count);
+    }
+
+    /*
+     * Returns the results in the order in which their (timestamp, group) pairs were first added.
+     * Throws IllegalArgumentException when the number of values of a group does not match the layout.
+     */
     Collection<CorrelationCountResult> getAll() {
-        ImmutableList.Builder<CorrelationCountResult> results = ImmutableList.builder();
-        for (DateTime timestamp: this.groupingFields.getTimestamps()) {
-            for (String key: this.groupingFields.getGroupByFields(timestamp)) {
-                ImmutableList<String> groupByFields = this.groupingFields.get(timestamp, key);
-                long firstStreamCount = this.firstStreamCounts.getOrDefault(timestamp, key, 0L);
-                long secondStreamCount = this.secondStreamCounts.getOrDefault(timestamp, key, 0L);
-                CorrelationCountResult result = new CorrelationCountResult(timestamp, groupByFields, firstStreamCount, secondStreamCount);
-                results.add(result);
+        ImmutableList.Builder<CorrelationCountResult> results = ImmutableList.builderWithExpectedSize(this.rowCount);
+        GroupByFields[] groupsByFields = new GroupByFields[this.groups.size()];
+        for (int row = 0; row < this.rowCount; row++) {
+            DateTime timestamp = new DateTime(this.timestamps[row], DateTimeZone.UTC);
+            int group = this.rowGroups[row];
+            if (groupsByFields[group] == null) {
+                groupsByFields[group] = this.layout.with(this.groups.get(group).getValues());
             }
+            GroupByFields groupByFields = groupsByFields[group];
+            CorrelationCountResult result = new CorrelationCountResult(timestamp, groupByFields,
+                    this.firstStreamCounts[row], this.secondStreamCounts[row],
+                    this.firstStreamValues[row], this.secondStreamValues[row], getCorrelatedStreamCounts(row),
+                    buildTimestamps(this.firstStreamTimestamps, row), buildTimestamps(this.secondStreamTimestamps, row));
+            results.add(result);
         }
 
         return results.build();
     }
+
+    private long[] getCorrelatedStreamCounts(int row) {
+        long[] counts = new long[this.correlatedStreamCounts.length];
+        for (int stream = 0; stream < counts.length; stream++) {
+            counts[stream] = this.correlatedStreamCounts[stream][row];
+        }
+        return counts;
+    }
+
+    private TimestampHistogram buildTimestamps(TimestampHistogram.Builder[] timestamps, int row) {
+        if (!this.withTimestamps) {
+            return null;
+        }
+        if (timestamps[row] == null) {
+            return new TimestampHistogram.Builder().build();
+        }
+        return timestamps[row].build();
+    }
 }
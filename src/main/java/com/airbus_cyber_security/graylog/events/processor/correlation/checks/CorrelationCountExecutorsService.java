@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/*
+ * Ties the executors shared by the correlation count processors to the lifecycle of the server: they are shut down
+ * when the server stops.
+ */
+@Singleton
+public class CorrelationCountExecutorsService extends AbstractIdleService {
+
+    private final CorrelationCountSearchExecutor searchExecutor;
+    private final CorrelationCountCheckExecutor checkExecutor;
+
+    @Inject
+    public CorrelationCountExecutorsService(CorrelationCountSearchExecutor searchExecutor, CorrelationCountCheckExecutor checkExecutor) {
+        this.searchExecutor = searchExecutor;
+        this.checkExecutor = checkExecutor;
+    }
+
+    @Override
+    protected void startUp() {
+        // the executors are ready as soon as they are created
+    }
+
+    @Override
+    protected void shutDown() {
+        this.searchExecutor.shutdown();
+        this.checkExecutor.shutdown();
+    }
+}
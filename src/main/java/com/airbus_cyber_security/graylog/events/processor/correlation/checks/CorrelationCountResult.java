@@ -19,20 +19,53 @@ package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
 
 import org.joda.time.DateTime;
 
-import java.util.List;
-
 public class CorrelationCountResult {
 
+    private static final long[] NO_COUNTS = new long[0];
+
     private final DateTime timestamp;
-    private final List<String> groupByFields;
+    private final GroupByFields groupByFields;
     private final long firstStreamCount;
     private final long secondStreamCount;
+    private final double firstStreamValue;
+    private final double secondStreamValue;
+    private final long[] correlatedStreamCounts;
+    private final TimestampHistogram firstStreamTimestamps;
+    private final TimestampHistogram secondStreamTimestamps;
 
-    public CorrelationCountResult(DateTime timestamp, List<String> groupByFields, long firstStreamCount, long secondStreamCount) {
+    public CorrelationCountResult(DateTime timestamp, GroupByFields groupByFields, long firstStreamCount, long secondStreamCount) {
+        this(timestamp, groupByFields, firstStreamCount, secondStreamCount, null, null);
+    }
+
+    public CorrelationCountResult(DateTime timestamp, GroupByFields groupByFields, long firstStreamCount, long secondStreamCount,
+                                  TimestampHistogram firstStreamTimestamps, TimestampHistogram secondStreamTimestamps) {
+        this(timestamp, groupByFields, firstStreamCount, secondStreamCount, (double) firstStreamCount, (double) secondStreamCount,
+                firstStreamTimestamps, secondStreamTimestamps);
+    }
+
+    public CorrelationCountResult(DateTime timestamp, GroupByFields groupByFields, long firstStreamCount, long secondStreamCount,
+                                  double firstStreamValue, double secondStreamValue,
+                                  TimestampHistogram firstStreamTimestamps, TimestampHistogram secondStreamTimestamps) {
+        this(timestamp, groupByFields, firstStreamCount, secondStreamCount, firstStreamValue, secondStreamValue, NO_COUNTS,
+                firstStreamTimestamps, secondStreamTimestamps);
+    }
+
+    /*
+     * The values are the results of the series of each stream, when they are not a count of messages.
+     * The correlated stream counts are in the order of the correlated streams of the configuration.
+     */
+    public CorrelationCountResult(DateTime timestamp, GroupByFields groupByFields, long firstStreamCount, long secondStreamCount,
+                                  double firstStreamValue, double secondStreamValue, long[] correlatedStreamCounts,
+                                  TimestampHistogram firstStreamTimestamps, TimestampHistogram secondStreamTimestamps) {
         this.timestamp = timestamp;
         this.groupByFields = groupByFields;
         this.firstStreamCount = firstStreamCount;
         this.secondStreamCount = secondStreamCount;
+        this.firstStreamValue = firstStreamValue;
+        this.secondStreamValue = secondStreamValue;
+        this.correlatedStreamCounts = correlatedStreamCounts;
+        this.firstStreamTimestamps = firstStreamTimestamps;
+        this.secondStreamTimestamps = secondStreamTimestamps;
     }
 
     public DateTime getTimestamp() {
@@ -47,7 +80,45 @@ public class CorrelationCountResult {
         return this.secondStreamCount;
     }
 
-    public List<String> getGroupByFields() {
+    /*
+     * Result of the series of the first stream, compared to its threshold (the number of messages for a count)
+     */
+    public double getFirstStreamValue() {
+        return this.firstStreamValue;
+    }
+
+    /*
+     * Result of the series of the second stream, compared to its threshold (the number of messages for a count)
+     */
+    public double getSecondStreamValue() {
+        return this.secondStreamValue;
+    }
+
+    /*
+     * Number of messages of the correlated stream at the given index (in the configuration)
+     */
+    public long getCorrelatedStreamCount(int index) {
+        return this.correlatedStreamCounts[index];
+    }
+
+    /*
+     * Values of the group by fields, by field name
+     */
+    public GroupByFields getGroupByFields() {
         return this.groupByFields;
     }
+
+    /*
+     * Only computed when the order is checked by the aggregations (null otherwise)
+     */
+    public TimestampHistogram getFirstStreamTimestamps() {
+        return this.firstStreamTimestamps;
+    }
+
+    /*
+     * Only computed when the order is checked by the aggregations (null otherwise)
+     */
+    public TimestampHistogram getSecondStreamTimestamps() {
+        return this.secondStreamTimestamps;
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.CorrelationCountConfiguration;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Runs the independent searches of the correlation count processors concurrently, on virtual threads.
+ * The searches then wait for their turn in the SearchGovernor, which bounds the searches of all the rules of the node.
+ * Since a waiting search only holds a virtual thread, the searches of slow rules can not take the threads the
+ * searches of the other rules need: the governor alone decides which search runs next.
+ * The number of concurrent searches of each execution of a rule is bounded by searchThreads, so that a rule with many
+ * time ranges does not fill the queue of the governor at once.
+ * The executor is shut down with the server (see CorrelationCountExecutorsService).
+ */
+@Singleton
+public class CorrelationCountSearchExecutor {
+
+    private final ExecutorService executor;
+    private final int searchThreads;
+
+    @Inject
+    public CorrelationCountSearchExecutor(@Named(CorrelationCountConfiguration.SEARCH_THREADS) int searchThreads) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("correlation-count-search-", 0).factory());
+        this.searchThreads = searchThreads;
+    }
+
+    /*
+     * Runs all the searches concurrently and returns their results in the order of the searches.
+     * As soon as one search fails, the others are cancelled and the failure is propagated.
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> searches, EventDefinition eventDefinition) throws EventProcessorException {
+        Semaphore rulePermits = new Semaphore(this.searchThreads);
+        List<Future<T>> futures = new ArrayList<>(searches.size());
+        try {
+            for (Callable<T> search: searches) {
+                rulePermits.acquire();
+                futures.add(this.executor.submit(bound(search, rulePermits)));
+            }
+            List<T> results = new ArrayList<>(searches.size());
+            for (Future<T> future: futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while searching for: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EventProcessorException cause) {
+                throw cause;
+            }
+            throw new EventProcessorException("Couldn't search for: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e.getCause());
+        } catch (RejectedExecutionException e) {
+            throw new EventProcessorException("Couldn't schedule searches for: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e);
+        } finally {
+            // has no effect on the searches which are already completed
+            for (Future<T> future: futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static <T> Callable<T> bound(Callable<T> search, Semaphore rulePermits) {
+        return () -> {
+            try {
+                return search.call();
+            } finally {
+                rulePermits.release();
+            }
+        };
+    }
+
+    /*
+     * Interrupts the running searches, the searches submitted afterwards are rejected
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
@@ -17,10 +17,15 @@
 
 package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
 
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelatedStream;
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountMetrics;
 import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.airbus_cyber_security.graylog.events.processor.correlation.RuleMetrics;
+import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 import org.graylog.events.processor.EventDefinition;
 import org.graylog.events.processor.EventProcessorException;
 import org.graylog.events.processor.aggregation.AggregationEventProcessorConfig;
@@ -31,38 +36,99 @@ import org.graylog.events.processor.aggregation.AggregationSearch;
 import org.graylog.events.processor.aggregation.AggregationSeriesValue;
 import org.graylog.events.search.MoreSearch;
 import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Cardinality;
 import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Min;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
 import org.graylog2.indexer.results.ResultMessage;
 import org.graylog2.indexer.results.SearchResult;
 import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.SearchesConfig;
 import org.graylog2.indexer.searches.Sorting;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.MessageSummary;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.graylog2.streams.StreamService;
 import org.joda.time.DateTime;
 
 import jakarta.inject.Inject;
 import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 public class CorrelationCountSearches {
 
-    private static final int SEARCH_LIMIT = 500;
+    private static final Logger LOG = LoggerFactory.getLogger(CorrelationCountSearches.class);
+
+    public static final int SEARCH_LIMIT = 500;
+    // SEARCH_LIMIT * BATCH_SIZE must not exceed the index max_result_window (10000 by default)
+    public static final int BATCH_SIZE = 20;
+    // sizes of the pages of the sorted timestamps searches
+    private static final int FIRST_PAGE_SIZE = 25;
+    private static final int MAXIMUM_PAGE_SIZE = 1600;
     private static final String HEADER_STREAM = "streams:";
+    private static final List<String> TIMESTAMP_PROJECTION = List.of(Message.FIELD_TIMESTAMP);
+    private static final DateTimeFormatter ES_DATE_FORMATTER = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS").withZoneUTC();
+    private static final DateTimeFormatter ISO_DATE_PARSER = ISODateTimeFormat.dateTimeParser().withZoneUTC();
+    // values of the group-by fields which are normalized (see normalizeValue)
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?");
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}[ T]");
     private final AggregationSearch.Factory aggregationSearchFactory;
-    // TODO should probably use MoreSearch rather than Searches (see code of AggregationEventProcessor)
+    // the searches of timestamps need the sorting and the projection of fields that only Searches offers
     private final Searches searches;
+    private final MoreSearch moreSearch;
+    private final StreamService streamService;
+    private final CorrelationCountSearchExecutor executor;
+    private final AggregationCache aggregationCache;
+    private final SearchGovernor governor;
+    private final CorrelationCountMetrics metrics;
 
     @Inject
-    public CorrelationCountSearches(AggregationSearch.Factory aggregationSearchFactory, Searches searches) {
+    public CorrelationCountSearches(AggregationSearch.Factory aggregationSearchFactory, Searches searches, MoreSearch moreSearch,
+                                    StreamService streamService, CorrelationCountSearchExecutor executor, AggregationCache aggregationCache,
+                                    SearchGovernor governor, CorrelationCountMetrics metrics) {
         this.aggregationSearchFactory = aggregationSearchFactory;
         this.searches = searches;
+        this.moreSearch = moreSearch;
+        this.streamService = streamService;
+        this.executor = executor;
+        this.aggregationCache = aggregationCache;
+        this.governor = governor;
+        this.metrics = metrics;
+    }
+
+    private AggregationResult getTerms(ImmutableSet<String> streams, TimeRange timeRange, long searchWithinMs, CorrelationCountProcessorConfig configuration, EventDefinition eventDefinition,
+                                       String searchQuery, List<String> groupBy, SeriesType seriesType, String seriesField,
+                                       RuleMetrics.StreamMetrics streamMetrics) throws EventProcessorException {
+        AggregationCache.Key key = AggregationCache.Key.create(String.join(",", streams), searchQuery, groupBy, seriesType, seriesField, timeRange, searchWithinMs, configuration.executeEveryMs());
+        return this.aggregationCache.get(key, () -> searchTerms(streams, timeRange, searchWithinMs, configuration, eventDefinition, searchQuery, groupBy,
+                seriesType, seriesField, streamMetrics), eventDefinition);
     }
 
-    private AggregationResult getTerms(String stream, TimeRange timeRange, CorrelationCountProcessorConfig configuration, EventDefinition eventDefinition, String searchQuery) throws EventProcessorException {
+    private AggregationResult searchTerms(ImmutableSet<String> streams, TimeRange timeRange, long searchWithinMs, CorrelationCountProcessorConfig configuration, EventDefinition eventDefinition,
+                                          String searchQuery, List<String> groupBy, SeriesType seriesType, String seriesField,
+                                          RuleMetrics.StreamMetrics streamMetrics) throws EventProcessorException {
         // Build series from configuration
         ImmutableList.Builder<SeriesSpec> seriesBuilder = ImmutableList.builder();
         StringBuilder idBuilder = new StringBuilder("correlation_id");
@@ -71,77 +137,593 @@ public class CorrelationCountSearches {
         }
         Count countSeries = Count.builder().id(idBuilder.toString()).build();
         seriesBuilder.add(countSeries);
+        // the messages are always counted, the other series come second
+        if (!seriesType.equals(SeriesType.COUNT)) {
+            seriesBuilder.add(buildSeries(seriesType, "correlation_value#" + seriesType.getDescription() + "#" + seriesField, seriesField));
+        }
         // Create the graylog "legal" aggregation configuration
         AggregationEventProcessorConfig config = AggregationEventProcessorConfig.builder()
-                .groupBy(configuration.groupingFields())
+                .groupBy(groupBy)
                 .query(searchQuery)
-                .streams(ImmutableSet.of(stream))
+                .streams(streams)
                 .executeEveryMs(configuration.executeEveryMs())
-                .searchWithinMs(configuration.searchWithinMs())
+                .searchWithinMs(searchWithinMs)
                 .series(seriesBuilder.build())
                 .build();
         AggregationEventProcessorParameters parameters = AggregationEventProcessorParameters.builder()
-                .streams(ImmutableSet.of(stream)).batchSize(Long.valueOf(SEARCH_LIMIT).intValue())
+                .streams(streams).batchSize(SEARCH_LIMIT)
                 .timerange(timeRange)
                 .build();
         String owner = "event-processor-" + AggregationEventProcessorConfig.TYPE_NAME + "-" + eventDefinition.id();
         AggregationSearch search = this.aggregationSearchFactory.create(config, parameters, new AggregationSearch.User(owner, DateTimeZone.UTC), eventDefinition, List.of());
-        return search.doSearch();
+        AggregationResult result;
+        try (SearchGovernor.Permit ignored = this.governor.acquire(eventDefinition);
+             Timer.Context ignored2 = streamMetrics.getAggregationTime().time()) {
+            result = search.doSearch();
+        }
+        streamMetrics.getAggregationBuckets().update(result.keyResults().size());
+        return result;
+    }
+
+    private SeriesSpec buildSeries(SeriesType seriesType, String id, String field) {
+        return switch (seriesType) {
+            case COUNT -> Count.builder().id(id).build();
+            case CARDINALITY -> Cardinality.builder().id(id).field(field).build();
+            case SUM -> Sum.builder().id(id).field(field).build();
+            case AVG -> Average.builder().id(id).field(field).build();
+            case MIN -> Min.builder().id(id).field(field).build();
+            case MAX -> Max.builder().id(id).field(field).build();
+        };
     }
 
     private long extractCount(AggregationKeyResult keyResult) {
         ImmutableList<AggregationSeriesValue> seriesValues = keyResult.seriesValues();
-        // there should only be one series (the AggregationFunction.COUNT)
+        // the first series is always the AggregationFunction.COUNT
         AggregationSeriesValue seriesValue = seriesValues.get(0);
         return Double.valueOf(seriesValue.value()).longValue();
     }
 
+    private double extractValue(AggregationKeyResult keyResult, SeriesType seriesType, long count) {
+        if (seriesType.equals(SeriesType.COUNT)) {
+            return (double) count;
+        }
+        // the series values are in the order of the series
+        return keyResult.seriesValues().get(1).value();
+    }
+
+    /*
+     * Depending on the search backend, the terms of a date field are either in epoch milliseconds or formatted dates
+     */
+    private long parseTimestamp(String value) {
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(value);
+        }
+        try {
+            return ES_DATE_FORMATTER.parseMillis(value);
+        } catch (IllegalArgumentException e) {
+            return ISO_DATE_PARSER.parseMillis(value);
+        }
+    }
+
     public Collection<CorrelationCountResult> count(TimeRange timeRange, CorrelationCountProcessorConfig configuration, EventDefinition eventDefinition) throws EventProcessorException {
+        return count(List.of(timeRange), configuration.searchWithinMs(), configuration, eventDefinition).get(0);
+    }
 
-        AggregationResult termResult = getTerms(configuration.stream(), timeRange, configuration, eventDefinition, configuration.searchQuery());
-        AggregationResult termResultAdditionalStream = getTerms(configuration.additionalStream(), timeRange, configuration, eventDefinition, configuration.additionalSearchQuery());
+    /*
+     * Counts the messages of each hop (a time range of executeEveryMs).
+     * Returns the results in the order of the hops.
+     * Consecutive hops are counted by a single aggregation per stream over their whole span: its date range buckets
+     * (searchWithinMs every executeEveryMs) are then the hops, with the end of the hop as timestamp. So an empty window
+     * (cold start, lost or outdated state) is filled at once rather than one hop at a time.
+     */
+    public List<Collection<CorrelationCountResult>> countPerHop(List<TimeRange> hops, CorrelationCountProcessorConfig configuration, EventDefinition eventDefinition) throws EventProcessorException {
+        List<TimeRange> spans = new ArrayList<>();
+        for (TimeRange hop: hops) {
+            int lastSpan = spans.size() - 1;
+            if (0 <= lastSpan && spans.get(lastSpan).getTo().equals(hop.getFrom())) {
+                spans.set(lastSpan, AbsoluteRange.create(spans.get(lastSpan).getFrom(), hop.getTo()));
+            } else {
+                spans.add(hop);
+            }
+        }
+        List<Collection<CorrelationCountResult>> spanResults = count(spans, configuration.executeEveryMs(), configuration, eventDefinition);
 
-        CorrelationCountCombinedResults results = new CorrelationCountCombinedResults();
+        Map<Long, List<CorrelationCountResult>> hopResults = new HashMap<>();
+        for (Collection<CorrelationCountResult> results: spanResults) {
+            for (CorrelationCountResult result: results) {
+                hopResults.computeIfAbsent(result.getTimestamp().getMillis(), k -> new ArrayList<>()).add(result);
+            }
+        }
+        List<Collection<CorrelationCountResult>> results = new ArrayList<>(hops.size());
+        for (TimeRange hop: hops) {
+            results.add(hopResults.getOrDefault(hop.getTo().getMillis(), List.of()));
+        }
+        return results;
+    }
 
-        for (AggregationKeyResult keyResult: termResult.keyResults()) {
-            ImmutableList<String> groupByFields = keyResult.key();
-            DateTime timestamp = keyResult.timestamp().get();
-            long value = extractCount(keyResult);
+    private List<Collection<CorrelationCountResult>> count(List<TimeRange> timeRanges, long searchWithinMs, CorrelationCountProcessorConfig configuration, EventDefinition eventDefinition) throws EventProcessorException {
+        if (!configuration.isOrderCheckedByAggregations()) {
+            return count(timeRanges, searchWithinMs, configuration, false, eventDefinition);
+        }
+        // when the order is checked by the aggregations, the messages are also counted per timestamp
+        try {
+            return count(timeRanges, searchWithinMs, configuration, true, eventDefinition);
+        } catch (EventProcessorException e) {
+            if (!hasTooManyBuckets(e)) {
+                throw e;
+            }
+            // the results then have no timestamps: the order of their messages is checked by searching for them
+            LOG.debug("Too many timestamps to check the order of the messages of correlation <{}> on the aggregations, searching for them instead", eventDefinition.title());
+            return count(timeRanges, searchWithinMs, configuration, false, eventDefinition);
+        }
+    }
 
-            results.addFirstStreamResult(timestamp, groupByFields, value);
+    /*
+     * A terms aggregation on the timestamps has a bucket per distinct timestamp of each group: the search fails when
+     * they exceed the search.max_buckets setting of the search cluster
+     */
+    private static boolean hasTooManyBuckets(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && (message.contains("too_many_buckets") || message.contains("max_buckets"))) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        for (AggregationKeyResult keyResult: termResultAdditionalStream.keyResults()) {
-            ImmutableList<String> groupByFields = keyResult.key();
-            DateTime timestamp = keyResult.timestamp().get();
-            long value = extractCount(keyResult);
+    private List<Collection<CorrelationCountResult>> count(List<TimeRange> timeRanges, long searchWithinMs, CorrelationCountProcessorConfig configuration,
+                                                           boolean withTimestamps, EventDefinition eventDefinition) throws EventProcessorException {
+        List<String> groupBy = configuration.groupingFields();
+        if (withTimestamps) {
+            groupBy = ImmutableList.<String>builder().addAll(groupBy).add(Message.FIELD_TIMESTAMP).build();
+        }
+        List<String> aggregationGroupBy = groupBy;
+        RuleMetrics ruleMetrics = this.metrics.forRule(eventDefinition);
 
-            results.addSecondStreamResult(timestamp, groupByFields, value);
+        if (configuration.isAggregatedBySingleSearch() && isInSingleIndexSet(configuration)) {
+            return countBySingleSearch(timeRanges, searchWithinMs, configuration, aggregationGroupBy, withTimestamps, ruleMetrics, eventDefinition);
         }
 
-        return results.getAll();
+        // all the aggregations (all the streams of every time range) are independent, they are run concurrently
+        List<CorrelatedStream> correlatedStreams = configuration.correlatedStreams();
+        int streamCount = 2 + correlatedStreams.size();
+        List<Callable<AggregationResult>> aggregations = new ArrayList<>(streamCount * timeRanges.size());
+        for (TimeRange timeRange: timeRanges) {
+            aggregations.add(() -> getTerms(ImmutableSet.of(configuration.stream()), timeRange, searchWithinMs, configuration, eventDefinition, configuration.searchQuery(), aggregationGroupBy,
+                    configuration.series(), configuration.seriesField(), ruleMetrics.getMainStream()));
+            aggregations.add(() -> getTerms(ImmutableSet.of(configuration.additionalStream()), timeRange, searchWithinMs, configuration, eventDefinition, configuration.additionalSearchQuery(), aggregationGroupBy,
+                    configuration.additionalSeries(), configuration.additionalSeriesField(), ruleMetrics.getAdditionalStream()));
+            for (int index = 0; index < correlatedStreams.size(); index++) {
+                CorrelatedStream correlatedStream = correlatedStreams.get(index);
+                RuleMetrics.StreamMetrics streamMetrics = ruleMetrics.getCorrelatedStream(index);
+                aggregations.add(() -> getTerms(ImmutableSet.of(correlatedStream.stream()), timeRange, searchWithinMs, configuration, eventDefinition, correlatedStream.searchQuery(), aggregationGroupBy,
+                        SeriesType.COUNT, "", streamMetrics));
+            }
+        }
+        List<AggregationResult> termResults = this.executor.invokeAll(aggregations, eventDefinition);
+
+        // all the results share the names of the group by fields
+        GroupByFields.Layout layout = GroupByFields.layout(configuration.groupingFields());
+        List<Collection<CorrelationCountResult>> results = new ArrayList<>(timeRanges.size());
+        for (int i = 0; i < timeRanges.size(); i++) {
+            results.add(combine(termResults.subList(streamCount * i, streamCount * (i + 1)), configuration, layout, withTimestamps, eventDefinition));
+        }
+        return results;
+    }
+
+    /*
+     * The single search of all the streams only scans the indices once when the streams are all in the same index set.
+     * Otherwise, it would search the indices of each stream with the buckets of all the others: each stream is then
+     * aggregated separately.
+     */
+    private boolean isInSingleIndexSet(CorrelationCountProcessorConfig configuration) {
+        Set<String> streams = new HashSet<>();
+        streams.add(configuration.stream());
+        streams.add(configuration.additionalStream());
+        for (CorrelatedStream correlatedStream: configuration.correlatedStreams()) {
+            streams.add(correlatedStream.stream());
+        }
+        return this.streamService.indexSetIdsByIds(streams).size() == 1;
+    }
+
+    /*
+     * termResults: the results of the main stream, the additional stream, then of each correlated stream
+     */
+    private Collection<CorrelationCountResult> combine(List<AggregationResult> termResults, CorrelationCountProcessorConfig configuration,
+                                                       GroupByFields.Layout layout, boolean withTimestamps, EventDefinition eventDefinition) throws EventProcessorException {
+        int correlatedStreamCount = termResults.size() - 2;
+        CorrelationCountCombinedResults results = new CorrelationCountCombinedResults(layout, correlatedStreamCount, withTimestamps);
+
+        try {
+            for (int position = 0; position < termResults.size(); position++) {
+                for (AggregationKeyResult keyResult: termResults.get(position).keyResults()) {
+                    addResult(results, position, keyResult, keyResult.key(), configuration, withTimestamps);
+                }
+            }
+            return results.getAll();
+        } catch (IllegalArgumentException e) {
+            throw new EventProcessorException("Unexpected aggregation results for: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e);
+        }
+    }
+
+    /*
+     * The messages of all the streams are aggregated by a single search per time range, with the streams of the messages
+     * as the last group by field. The buckets are then dispatched to the streams of the rule by the value of this field
+     * (the buckets of the other streams the messages belong to are ignored).
+     */
+    private List<Collection<CorrelationCountResult>> countBySingleSearch(List<TimeRange> timeRanges, long searchWithinMs, CorrelationCountProcessorConfig configuration,
+                                                                        List<String> groupBy, boolean withTimestamps, RuleMetrics ruleMetrics,
+                                                                        EventDefinition eventDefinition) throws EventProcessorException {
+        // positions of each stream: 0 for the main stream, 1 for the additional stream, then the correlated streams
+        Map<String, List<Integer>> positions = new HashMap<>();
+        positions.computeIfAbsent(configuration.stream(), k -> new ArrayList<>()).add(0);
+        positions.computeIfAbsent(configuration.additionalStream(), k -> new ArrayList<>()).add(1);
+        List<CorrelatedStream> correlatedStreams = configuration.correlatedStreams();
+        for (int index = 0; index < correlatedStreams.size(); index++) {
+            positions.computeIfAbsent(correlatedStreams.get(index).stream(), k -> new ArrayList<>()).add(2 + index);
+        }
+        ImmutableSet<String> streams = ImmutableSet.copyOf(positions.keySet());
+        List<String> streamsGroupBy = ImmutableList.<String>builder().addAll(groupBy).add(Message.FIELD_STREAMS).build();
+
+        List<Callable<AggregationResult>> aggregations = new ArrayList<>(timeRanges.size());
+        for (TimeRange timeRange: timeRanges) {
+            aggregations.add(() -> getTerms(streams, timeRange, searchWithinMs, configuration, eventDefinition, configuration.searchQuery(), streamsGroupBy,
+                    configuration.series(), configuration.seriesField(), ruleMetrics.getAllStreams()));
+        }
+        List<AggregationResult> termResults = this.executor.invokeAll(aggregations, eventDefinition);
+
+        GroupByFields.Layout layout = GroupByFields.layout(configuration.groupingFields());
+        List<Collection<CorrelationCountResult>> results = new ArrayList<>(timeRanges.size());
+        for (AggregationResult termResult: termResults) {
+            CorrelationCountCombinedResults combinedResults = new CorrelationCountCombinedResults(layout, correlatedStreams.size(), withTimestamps);
+            try {
+                for (AggregationKeyResult keyResult: termResult.keyResults()) {
+                    ImmutableList<String> key = keyResult.key();
+                    List<Integer> streamPositions = positions.get(key.get(key.size() - 1));
+                    if (streamPositions == null) {
+                        continue;
+                    }
+                    for (int position: streamPositions) {
+                        addResult(combinedResults, position, keyResult, key.subList(0, key.size() - 1), configuration, withTimestamps);
+                    }
+                }
+                results.add(combinedResults.getAll());
+            } catch (IllegalArgumentException e) {
+                throw new EventProcessorException("Unexpected aggregation results for: " + eventDefinition.title(), false, eventDefinition.id(), eventDefinition, e);
+            }
+        }
+        return results;
+    }
+
+    /*
+     * position: 0 for the main stream, 1 for the additional stream, 2 + index for the correlated stream at index
+     * key: the values of the group by fields of the bucket (followed by its timestamp when the order is checked by the aggregations)
+     */
+    private void addResult(CorrelationCountCombinedResults results, int position, AggregationKeyResult keyResult, ImmutableList<String> key,
+                           CorrelationCountProcessorConfig configuration, boolean withTimestamps) {
+        DateTime timestamp = keyResult.timestamp().get();
+        long count = extractCount(keyResult);
+        if (2 <= position) {
+            // correlated streams are not available when the order is checked by the aggregations: their keys have no timestamp
+            results.addCorrelatedStreamResult(position - 2, timestamp, key, count);
+            return;
+        }
+        if (withTimestamps) {
+            long messagesTimestamp = parseTimestamp(key.get(key.size() - 1));
+            ImmutableList<String> groupByFields = key.subList(0, key.size() - 1);
+            if (position == 0) {
+                results.addFirstStreamTimestampResult(timestamp, groupByFields, messagesTimestamp, count);
+            } else {
+                results.addSecondStreamTimestampResult(timestamp, groupByFields, messagesTimestamp, count);
+            }
+        } else if (position == 0) {
+            results.addFirstStreamResult(timestamp, key, count, extractValue(keyResult, configuration.series(), count));
+        } else {
+            results.addSecondStreamResult(timestamp, key, count, extractValue(keyResult, configuration.additionalSeries(), count));
+        }
+    }
+
+    /*
+     * An empty query matches all the messages, like *
+     */
+    private static boolean matchesAllMessages(String searchQuery) {
+        return searchQuery == null || searchQuery.isBlank() || searchQuery.trim().equals("*");
     }
 
     private String buildSearchQuery(String searchQuery, Map<String, String> groupByFields) {
-        // TODO: should searchQuery be sanitized?
-        StringBuilder builder = new StringBuilder(searchQuery);
+        if (matchesAllMessages(searchQuery) && groupByFields.isEmpty()) {
+            return "*";
+        }
+        StringBuilder builder = new StringBuilder();
+        if (!matchesAllMessages(searchQuery)) {
+            // the query of the rule is kept as a whole, so that its operators do not apply to the group-by fields
+            builder.append("(").append(searchQuery).append(")");
+        }
         for (Map.Entry<String, String> groupBy: groupByFields.entrySet()) {
+            if (0 < builder.length()) {
+                builder.append(" AND ");
+            }
             String name = groupBy.getKey();
             String value = MoreSearch.luceneEscape(groupBy.getValue());
-            builder.append(" AND ").append(name).append(": \"").append(value).append("\"");
+            builder.append(name).append(": \"").append(value).append("\"");
         }
         return builder.toString();
     }
 
-    public List<MessageSummary> searchMessages(String additionalQuery, Map<String, String> groupByFields, String stream, TimeRange range) {
-        String searchQuery = this.buildSearchQuery(additionalQuery, groupByFields);
-        String filter = HEADER_STREAM + stream;
-        SearchResult backlogResult = this.searches.search(searchQuery, filter,
-                range, SEARCH_LIMIT, 0, new Sorting(Message.FIELD_TIMESTAMP, Sorting.Direction.DESC));
-        List<MessageSummary> result = Lists.newArrayList();
-        for (ResultMessage resultMessage: backlogResult.getResults()) {
-            result.add(new MessageSummary(resultMessage.getIndex(), resultMessage.getMessage()));
+    /*
+     * Scrolls through the messages of a group (see AggregationEventProcessor.sourceMessagesForEvent), and hands them
+     * over to the consumer batch by batch, up to limit messages.
+     * Returns the number of messages handed over.
+     */
+    public long scrollMessages(String searchQuery, Map<String, String> groupByFields, String stream, TimeRange range,
+                               long limit, Consumer<List<MessageSummary>> messageConsumer, EventDefinition eventDefinition) throws EventProcessorException {
+        if (limit <= 0) {
+            return 0;
+        }
+        AtomicLong messageCount = new AtomicLong();
+        MoreSearch.ScrollCallback callback = (messages, continueScrolling) -> {
+            int count = Ints.saturatedCast(Math.min(messages.size(), limit - messageCount.get()));
+            List<MessageSummary> summaries = new ArrayList<>(count);
+            for (ResultMessage resultMessage: messages.subList(0, count)) {
+                summaries.add(new MessageSummary(resultMessage.getIndex(), resultMessage.getMessage()));
+            }
+            if (!summaries.isEmpty()) {
+                messageConsumer.accept(summaries);
+            }
+            if (messageCount.addAndGet(count) >= limit) {
+                continueScrolling.set(false);
+            }
+        };
+        try (SearchGovernor.Permit ignored = this.governor.acquire(eventDefinition)) {
+            this.moreSearch.scrollQuery(this.buildSearchQuery(searchQuery, groupByFields), ImmutableSet.of(stream), List.of(), Set.of(), range,
+                    Ints.saturatedCast(Math.min(SEARCH_LIMIT, limit)), callback);
+        }
+        return messageCount.get();
+    }
+
+    /*
+     * Searches only the timestamps (in epoch milliseconds) of the most recent messages of a group.
+     * This is all the order checks need, so the search only retrieves the timestamp field.
+     */
+    private long[] searchTimestamps(String searchQuery, Map<String, String> groupByFields, String stream, TimeRange range,
+                                    Timer searchTime, EventDefinition eventDefinition) throws EventProcessorException {
+        SearchesConfig config = SearchesConfig.builder()
+                .query(this.buildSearchQuery(searchQuery, groupByFields))
+                .filter(HEADER_STREAM + stream)
+                .fields(TIMESTAMP_PROJECTION)
+                .range(range)
+                .limit(SEARCH_LIMIT)
+                .offset(0)
+                .sorting(new Sorting(Message.FIELD_TIMESTAMP, Sorting.Direction.DESC))
+                .build();
+        SearchResult backlogResult = search(config, searchTime, eventDefinition);
+        List<ResultMessage> resultMessages = backlogResult.getResults();
+        long[] timestamps = new long[resultMessages.size()];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = resultMessages.get(i).getMessage().getTimestamp().getMillis();
+        }
+        return timestamps;
+    }
+
+    /*
+     * Searches the message timestamps of a group page by page, sorted by increasing or decreasing timestamps.
+     * Contrary to the other searches, all the messages of the group can be read, not only the SEARCH_LIMIT most recent.
+     * The pages are only searched as the timestamps are read.
+     */
+    public TimestampCursor searchSortedTimestamps(String searchQuery, Map<String, String> groupByFields, String stream, DateTime to,
+                                                  long searchWithinMs, boolean increasing, EventDefinition eventDefinition) {
+        Timer searchTime = this.metrics.forRule(eventDefinition).getMessageSearchTime();
+        return new SearchTimestampCursor(config -> search(config, searchTime, eventDefinition), this.buildSearchQuery(searchQuery, groupByFields),
+                HEADER_STREAM + stream, AbsoluteRange.create(to.minus(searchWithinMs), to), increasing, FIRST_PAGE_SIZE, MAXIMUM_PAGE_SIZE);
+    }
+
+    /*
+     * Searches the message timestamps of every group in batches: a single search per batch retrieves the timestamps of
+     * all its groups, which are then dispatched back to their group (thanks to the values of the group-by fields, which
+     * are the only other fields retrieved).
+     * When the results of a batch are truncated, only its groups which may miss messages are searched again one by one,
+     * so that each group still gets its SEARCH_LIMIT most recent messages.
+     * Returns the timestamps of each group, in the order of the groups (groups with the same values of the group-by
+     * fields but different timestamps are distinct).
+     */
+    public List<long[]> searchTimestamps(String searchQuery, String stream, List<CorrelationCountResult> groups,
+                                         long searchWithinMs, EventDefinition eventDefinition) throws EventProcessorException {
+        List<long[]> results = new ArrayList<>(groups.size());
+        Timer searchTime = this.metrics.forRule(eventDefinition).getMessageSearchTime();
+        for (List<CorrelationCountResult> batch: Lists.partition(groups, BATCH_SIZE)) {
+            if (batch.size() == 1 || batch.get(0).getGroupByFields().isEmpty()) {
+                results.addAll(searchTimestampsOneByOne(searchQuery, stream, batch, searchWithinMs, searchTime, eventDefinition));
+                continue;
+            }
+            results.addAll(searchTimestampsBatch(searchQuery, stream, batch, searchWithinMs, searchTime, eventDefinition));
+        }
+        return results;
+    }
+
+    private List<long[]> searchTimestampsOneByOne(String searchQuery, String stream, List<CorrelationCountResult> batch, long searchWithinMs,
+                                                  Timer searchTime, EventDefinition eventDefinition) throws EventProcessorException {
+        List<long[]> results = new ArrayList<>(batch.size());
+        for (CorrelationCountResult group: batch) {
+            TimeRange range = buildSearchTimeRange(group.getTimestamp(), searchWithinMs);
+            results.add(this.searchTimestamps(searchQuery, group.getGroupByFields(), stream, range, searchTime, eventDefinition));
+        }
+        return results;
+    }
+
+    private List<long[]> searchTimestampsBatch(String searchQuery, String stream, List<CorrelationCountResult> batch, long searchWithinMs,
+                                               Timer searchTime, EventDefinition eventDefinition) throws EventProcessorException {
+        List<String> fieldNames = batch.get(0).getGroupByFields().getLayout().getNames();
+        // positions in the batch of the groups, by normalized values of the group-by fields
+        Map<List<String>, List<Integer>> groupsByValues = new HashMap<>();
+        TimestampsBuffer[] timestamps = new TimestampsBuffer[batch.size()];
+        DateTime from = null;
+        DateTime to = null;
+        for (int i = 0; i < batch.size(); i++) {
+            CorrelationCountResult group = batch.get(i);
+            groupsByValues.computeIfAbsent(normalizeValues(group.getGroupByFields().getValues()), k -> new ArrayList<>()).add(i);
+            timestamps[i] = new TimestampsBuffer();
+            DateTime groupFrom = group.getTimestamp().minus(searchWithinMs);
+            if (from == null || groupFrom.isBefore(from)) {
+                from = groupFrom;
+            }
+            if (to == null || group.getTimestamp().isAfter(to)) {
+                to = group.getTimestamp();
+            }
+        }
+
+        List<String> projection = new ArrayList<>(TIMESTAMP_PROJECTION);
+        projection.addAll(fieldNames);
+        SearchesConfig config = SearchesConfig.builder()
+                .query(this.buildBatchSearchQuery(searchQuery, fieldNames, batch))
+                .filter(HEADER_STREAM + stream)
+                .fields(projection)
+                .range(AbsoluteRange.create(from, to))
+                .limit(SEARCH_LIMIT * batch.size())
+                .offset(0)
+                .sorting(new Sorting(Message.FIELD_TIMESTAMP, Sorting.Direction.DESC))
+                .build();
+        SearchResult backlogResult = search(config, searchTime, eventDefinition);
+        List<ResultMessage> resultMessages = backlogResult.getResults();
+
+        for (ResultMessage resultMessage: resultMessages) {
+            Message message = resultMessage.getMessage();
+            List<Integer> candidates = groupsByValues.get(extractValues(fieldNames, message));
+            if (candidates == null) {
+                continue;
+            }
+            long timestamp = message.getTimestamp().getMillis();
+            for (int position: candidates) {
+                TimestampsBuffer groupTimestamps = timestamps[position];
+                if (groupTimestamps.size() >= SEARCH_LIMIT || !isWithinSearchTimeRange(timestamp, batch.get(position).getTimestamp(), searchWithinMs)) {
+                    continue;
+                }
+                groupTimestamps.add(timestamp);
+            }
+        }
+        // the results are the most recent messages of the batch: when they are truncated, the groups which got all their
+        // messages are the ones with SEARCH_LIMIT messages, and the ones whose time range starts after the oldest result
+        boolean truncated = backlogResult.getTotalResults() > resultMessages.size();
+        long oldestTimestamp = resultMessages.isEmpty() ? Long.MAX_VALUE : resultMessages.get(resultMessages.size() - 1).getMessage().getTimestamp().getMillis();
+        List<long[]> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            CorrelationCountResult group = batch.get(i);
+            long groupFrom = group.getTimestamp().getMillis() - searchWithinMs;
+            if (truncated && timestamps[i].size() < SEARCH_LIMIT && groupFrom <= oldestTimestamp) {
+                TimeRange range = buildSearchTimeRange(group.getTimestamp(), searchWithinMs);
+                results.add(this.searchTimestamps(searchQuery, group.getGroupByFields(), stream, range, searchTime, eventDefinition));
+            } else {
+                results.add(timestamps[i].toArray());
+            }
+        }
+        return results;
+    }
+
+    private SearchResult search(SearchesConfig config, Timer searchTime, EventDefinition eventDefinition) throws EventProcessorException {
+        try (SearchGovernor.Permit ignored = this.governor.acquire(eventDefinition);
+             Timer.Context ignored2 = searchTime.time()) {
+            return this.searches.search(config);
+        }
+    }
+
+    private String buildBatchSearchQuery(String searchQuery, List<String> fieldNames, List<CorrelationCountResult> batch) {
+        StringBuilder builder = new StringBuilder();
+        if (!matchesAllMessages(searchQuery)) {
+            builder.append("(").append(searchQuery).append(") AND ");
+        }
+        builder.append("(");
+        // the groups with the same values (at different timestamps) are only searched once
+        Set<List<String>> groupsValues = new LinkedHashSet<>();
+        for (CorrelationCountResult group: batch) {
+            groupsValues.add(group.getGroupByFields().getValues());
+        }
+        boolean firstGroup = true;
+        for (List<String> values: groupsValues) {
+            if (!firstGroup) {
+                builder.append(" OR ");
+            }
+            firstGroup = false;
+            builder.append("(");
+            for (int i = 0; i < fieldNames.size(); i++) {
+                if (0 < i) {
+                    builder.append(" AND ");
+                }
+                String value = MoreSearch.luceneEscape(values.get(i));
+                builder.append(fieldNames.get(i)).append(": \"").append(value).append("\"");
+            }
+            builder.append(")");
+        }
+        return builder.append(")").toString();
+    }
+
+    private List<String> extractValues(List<String> fieldNames, Message message) {
+        List<String> values = new ArrayList<>(fieldNames.size());
+        for (String name: fieldNames) {
+            values.add(normalizeValue(message.getField(name)));
+        }
+        return values;
+    }
+
+    private List<String> normalizeValues(List<String> values) {
+        List<String> result = new ArrayList<>(values.size());
+        for (String value: values) {
+            result.add(normalizeValue(value));
         }
         return result;
     }
+
+    /*
+     * The terms of the aggregations are strings, whereas the fields of the messages may be numbers or dates.
+     * Both are normalized to the same representation: the numbers without trailing zeros (42, 42.0 and "42.0" are all
+     * 42) and the dates in epoch milliseconds (like parseTimestamp).
+     */
+    private String normalizeValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof DateTime date) {
+            return String.valueOf(date.getMillis());
+        }
+        String text = value.toString();
+        try {
+            if (NUMBER.matcher(text).matches()) {
+                return new BigDecimal(text).stripTrailingZeros().toPlainString();
+            }
+            if (DATE.matcher(text).lookingAt()) {
+                return String.valueOf(parseTimestamp(text));
+            }
+        } catch (IllegalArgumentException e) {
+            // not a date after all
+        }
+        return text;
+    }
+
+    private boolean isWithinSearchTimeRange(long timestamp, DateTime to, long searchWithinMs) {
+        return to.getMillis() - searchWithinMs <= timestamp && timestamp <= to.getMillis();
+    }
+
+    private TimeRange buildSearchTimeRange(DateTime to, long searchWithinMs) {
+        return AbsoluteRange.create(to.minus(searchWithinMs), to);
+    }
+
+    private static class TimestampsBuffer {
+        private long[] values = new long[16];
+        private int size = 0;
+
+        void add(long timestamp) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, 2 * this.size);
+            }
+            this.values[this.size] = timestamp;
+            this.size++;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Immutable view of the values of the group by fields of a result, by field name.
+ * The names of the fields and their positions are held by a Layout, which is shared by all the results of a rule:
+ * each view only holds its values.
+ */
+public final class GroupByFields extends AbstractMap<String, String> {
+
+    private final Layout layout;
+    private final ImmutableList<String> values;
+
+    private GroupByFields(Layout layout, ImmutableList<String> values) {
+        this.layout = layout;
+        this.values = values;
+    }
+
+    public static Layout layout(List<String> names) {
+        return new Layout(names);
+    }
+
+    /*
+     * Returns the values of the fields, in the order of the names of the layout
+     */
+    public ImmutableList<String> getValues() {
+        return this.values;
+    }
+
+    public Layout getLayout() {
+        return this.layout;
+    }
+
+    @Override
+    public String get(Object name) {
+        Integer position = this.layout.positions.get(name);
+        if (position == null) {
+            return null;
+        }
+        return this.values.get(position);
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return this.layout.positions.containsKey(name);
+    }
+
+    @Override
+    public int size() {
+        return this.layout.positions.size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                Iterator<Entry<String, Integer>> positions = GroupByFields.this.layout.positions.entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return positions.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        Entry<String, Integer> position = positions.next();
+                        return new SimpleImmutableEntry<>(position.getKey(), GroupByFields.this.values.get(position.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return GroupByFields.this.size();
+            }
+        };
+    }
+
+    /*
+     * Names of the group by fields of a rule, with the position of their values.
+     * The fields are iterated in the order of the names. When a name is repeated, its last value is kept.
+     */
+    public static final class Layout {
+
+        private final ImmutableList<String> names;
+        private final Map<String, Integer> positions;
+
+        private Layout(List<String> names) {
+            this.names = ImmutableList.copyOf(names);
+            Map<String, Integer> positions = Maps.newLinkedHashMapWithExpectedSize(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                positions.put(names.get(i), i);
+            }
+            this.positions = positions;
+        }
+
+        public ImmutableList<String> getNames() {
+            return this.names;
+        }
+
+        /*
+         * Returns the view of the given values, which must be in the order of the names
+         */
+        public GroupByFields with(List<String> values) {
+            if (values.size() != this.names.size()) {
+                throw new IllegalArgumentException("Expected " + this.names.size() + " group by fields, but got " + values);
+            }
+            return new GroupByFields(this, ImmutableList.copyOf(values));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/*
+ * Values of the group by fields of an aggregation bucket.
+ * Compares the values one by one (no concatenation, so values containing a separator do not collide),
+ * and computes the hash code only once.
+ */
+public final class GroupKey {
+
+    private final ImmutableList<String> values;
+    private final int hash;
+
+    private GroupKey(ImmutableList<String> values) {
+        this.values = values;
+        this.hash = values.hashCode();
+    }
+
+    public static GroupKey of(List<String> values) {
+        return new GroupKey(ImmutableList.copyOf(values));
+    }
+
+    public ImmutableList<String> getValues() {
+        return this.values;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof GroupKey groupKey)) {
+            return false;
+        }
+        return this.hash == groupKey.hash && this.values.equals(groupKey.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return this.values.toString();
+    }
+}
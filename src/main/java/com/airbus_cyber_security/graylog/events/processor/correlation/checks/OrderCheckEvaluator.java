@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+/*
+ * Incremental evaluation of the order check (see CorrelationCountCheck.checkOrderSecondStream).
+ * The messages are fed in the order of the sweep: for each timestamp of the first stream, the messages of the second
+ * stream strictly before it, then the messages of the first stream with this timestamp.
+ * Thanks to the totals of both streams, the evaluation is decided as soon as the rule is triggered, but also as soon as
+ * the thresholds can not be reached anymore: the count of the first stream can then only be lower, and the count of the
+ * second stream can not exceed its total. So the remaining messages do not need to be read.
+ */
+public class OrderCheckEvaluator {
+
+    public enum State {
+        TRIGGERED,
+        NOT_TRIGGERED,
+        UNDECIDED
+    }
+
+    private final Threshold mainStreamThreshold;
+    private final Threshold additionalStreamThreshold;
+    private final long totalSecondStream;
+    // number of messages of the first stream from the next one on
+    private long countFirstStream;
+    private long countSecondStream = 0;
+    private State state;
+
+    public OrderCheckEvaluator(Threshold mainStreamThreshold, Threshold additionalStreamThreshold, long totalFirstStream, long totalSecondStream) {
+        this.mainStreamThreshold = mainStreamThreshold;
+        this.additionalStreamThreshold = additionalStreamThreshold;
+        this.countFirstStream = totalFirstStream;
+        this.totalSecondStream = totalSecondStream;
+        this.state = canBeTriggered() ? State.UNDECIDED : State.NOT_TRIGGERED;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    public void addSecondStreamMessage() {
+        this.countSecondStream++;
+    }
+
+    /*
+     * Adds the messages of the first stream with the same timestamp
+     */
+    public State addFirstStreamMessages(long count) {
+        if (this.state != State.UNDECIDED) {
+            return this.state;
+        }
+        if (this.mainStreamThreshold.isReachedBetween(this.countFirstStream - count + 1, this.countFirstStream)
+                && this.additionalStreamThreshold.isReached((double) this.countSecondStream)) {
+            this.state = State.TRIGGERED;
+            return this.state;
+        }
+        this.countFirstStream -= count;
+        if (!canBeTriggered()) {
+            this.state = State.NOT_TRIGGERED;
+        }
+        return this.state;
+    }
+
+    /*
+     * The next counts of the first stream are between 1 and its current count, those of the second stream between its
+     * current count and its total. Since the thresholds are monotonic, it is enough to check the bounds.
+     */
+    private boolean canBeTriggered() {
+        if (this.countFirstStream <= 0) {
+            return false;
+        }
+        long maximumCountSecondStream = Math.max(this.countSecondStream, this.totalSecondStream);
+        return this.mainStreamThreshold.isReachedBetween(1, this.countFirstStream)
+                && this.additionalStreamThreshold.isReachedBetween(this.countSecondStream, maximumCountSecondStream);
+    }
+}
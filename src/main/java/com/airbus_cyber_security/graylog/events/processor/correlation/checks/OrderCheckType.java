@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public enum OrderCheckType {
+
+    // the order is checked on the timestamps of the messages, retrieved by searches
+    @JsonProperty("MESSAGES")
+    MESSAGES("MESSAGES"),
+
+    // the order is checked on the number of messages per timestamp, computed by the aggregations
+    @JsonProperty("AGGREGATION")
+    AGGREGATION("AGGREGATION");
+
+    private final String description;
+
+    OrderCheckType(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public static OrderCheckType fromString(String text) {
+        for (OrderCheckType orderCheckType: OrderCheckType.values()) {
+            if (orderCheckType.description.equals(text)) {
+                return orderCheckType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown OrderCheckType value: " + text);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.CorrelationCountConfiguration;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Admission control of the searches of all the correlation count processors of the node.
+ * At most maximumSearches searches run at the same time, the others wait for their turn: the searches of the rules
+ * with the highest priority (see EventDefinition.priority) go first, and the searches with the same priority go in
+ * their order of arrival.
+ * This bounds the load on the search cluster when many rules run at the same time.
+ */
+@Singleton
+public class SearchGovernor {
+
+    // highest priority first, then first come first served
+    private static final Comparator<Waiter> ORDER = Comparator.<Waiter>comparingInt(waiter -> waiter.priority).reversed()
+            .thenComparingLong(waiter -> waiter.sequence);
+
+    private final int maximumSearches;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(ORDER);
+    private final Timer waitTime;
+    private int running = 0;
+    private long sequence = 0;
+
+    @Inject
+    public SearchGovernor(@Named(CorrelationCountConfiguration.MAX_CONCURRENT_SEARCHES) int maximumSearches, MetricRegistry metricRegistry) {
+        this.maximumSearches = maximumSearches;
+        this.waitTime = metricRegistry.timer(MetricRegistry.name(SearchGovernor.class, "wait", "time"));
+        metricRegistry.register(MetricRegistry.name(SearchGovernor.class, "queue", "depth"), (Gauge<Integer>) this::getQueueDepth);
+        metricRegistry.register(MetricRegistry.name(SearchGovernor.class, "running"), (Gauge<Integer>) this::getRunning);
+    }
+
+    /*
+     * Waits until the search of the rule may run. The returned permit must be closed once the search is over.
+     */
+    public Permit acquire(EventDefinition eventDefinition) throws EventProcessorException {
+        long start = System.nanoTime();
+        this.lock.lock();
+        try {
+            if (this.running < this.maximumSearches && this.waiters.isEmpty()) {
+                this.running++;
+            } else {
+                await(new Waiter(eventDefinition.priority(), this.sequence++, this.lock.newCondition()), eventDefinition);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.waitTime.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return this::release;
+    }
+
+    private void await(Waiter waiter, EventDefinition eventDefinition) throws EventProcessorException {
+        this.waiters.add(waiter);
+        while (!waiter.admitted) {
+            try {
+                waiter.condition.await();
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    // the turn of the search came anyway: it is given to the next one
+                    this.running--;
+                    admitWaiters();
+                } else {
+                    this.waiters.remove(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw interrupted(eventDefinition, e);
+            }
+        }
+    }
+
+    /*
+     * The exception requires the id of the event definition, which the definitions not saved yet do not have
+     */
+    private static EventProcessorException interrupted(EventDefinition eventDefinition, InterruptedException cause) {
+        String message = "Interrupted while waiting to search for: " + eventDefinition.title();
+        String eventDefinitionId = Objects.requireNonNullElse(eventDefinition.id(), "");
+        return new EventProcessorException(message, false, eventDefinitionId, eventDefinition, cause);
+    }
+
+    private void release() {
+        this.lock.lock();
+        try {
+            this.running--;
+            admitWaiters();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void admitWaiters() {
+        while (this.running < this.maximumSearches && !this.waiters.isEmpty()) {
+            Waiter waiter = this.waiters.poll();
+            waiter.admitted = true;
+            this.running++;
+            waiter.condition.signal();
+        }
+    }
+
+    public int getQueueDepth() {
+        this.lock.lock();
+        try {
+            return this.waiters.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getRunning() {
+        this.lock.lock();
+        try {
+            return this.running;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /*
+     * The right to run a search, given back when closed.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class Waiter {
+        private final int priority;
+        private final long sequence;
+        private final Condition condition;
+        private boolean admitted = false;
+
+        Waiter(int priority, long sequence, Condition condition) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog2.indexer.results.ResultMessage;
+import org.graylog2.indexer.results.SearchResult;
+import org.graylog2.indexer.searches.SearchesConfig;
+import org.graylog2.indexer.searches.Sorting;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * Searches the timestamps of the messages page by page, sorted by timestamp.
+ * Rather than an increasing offset, which is bounded by the index max_result_window, each page starts at the
+ * timestamp of the last message of the previous page: its offset only skips the messages with this timestamp that
+ * were already read. Since only the timestamps are read, it does not matter which of these messages are skipped.
+ * So only a page of timestamps is in memory, whatever the number of messages.
+ * The order check is often decided after a few messages: the first page is small, and the size of the pages doubles
+ * up to a maximum, so that long reads still make few searches.
+ */
+class SearchTimestampCursor implements TimestampCursor {
+
+    private static final List<String> TIMESTAMP_PROJECTION = List.of(Message.FIELD_TIMESTAMP);
+
+    private final PageSearch searches;
+    private final String query;
+    private final String filter;
+    private final DateTime from;
+    private final DateTime to;
+    private final boolean ascending;
+    private final int maximumPageSize;
+
+    private int pageSize;
+
+    private long total = -1;
+    private long[] page = null;
+    private int index = 0;
+    private boolean exhausted = false;
+    private long lastTimestamp = Long.MIN_VALUE;
+    // number of messages already read with the last timestamp
+    private int lastTimestampCount = 0;
+
+    SearchTimestampCursor(PageSearch searches, String query, String filter, AbsoluteRange range, boolean ascending,
+                          int initialPageSize, int maximumPageSize) {
+        this.searches = searches;
+        this.query = query;
+        this.filter = filter;
+        this.from = range.from();
+        this.to = range.to();
+        this.ascending = ascending;
+        this.pageSize = initialPageSize;
+        this.maximumPageSize = maximumPageSize;
+    }
+
+    private void fetchPageIfNeeded() throws EventProcessorException {
+        if (this.exhausted || (this.page != null && this.index < this.page.length)) {
+            return;
+        }
+        AbsoluteRange range = AbsoluteRange.create(this.from, this.to);
+        int offset = 0;
+        if (this.page != null) {
+            DateTime lastTimestamp = new DateTime(this.lastTimestamp, DateTimeZone.UTC);
+            range = this.ascending ? AbsoluteRange.create(lastTimestamp, this.to) : AbsoluteRange.create(this.from, lastTimestamp);
+            offset = this.lastTimestampCount;
+        }
+        SearchesConfig config = SearchesConfig.builder()
+                .query(this.query)
+                .filter(this.filter)
+                .fields(TIMESTAMP_PROJECTION)
+                .range(range)
+                .limit(this.pageSize)
+                .offset(offset)
+                .sorting(new Sorting(Message.FIELD_TIMESTAMP, this.ascending ? Sorting.Direction.ASC : Sorting.Direction.DESC))
+                .build();
+        SearchResult result = this.searches.search(config);
+        if (this.total < 0) {
+            this.total = result.getTotalResults();
+        }
+
+        List<ResultMessage> resultMessages = result.getResults();
+        this.page = new long[resultMessages.size()];
+        for (int i = 0; i < this.page.length; i++) {
+            long timestamp = resultMessages.get(i).getMessage().getTimestamp().getMillis();
+            this.page[i] = timestamp;
+            if (timestamp == this.lastTimestamp) {
+                this.lastTimestampCount++;
+            } else {
+                this.lastTimestamp = timestamp;
+                this.lastTimestampCount = 1;
+            }
+        }
+        this.index = 0;
+        this.exhausted = this.page.length < this.pageSize;
+        this.pageSize = Math.min(2 * this.pageSize, this.maximumPageSize);
+    }
+
+    @Override
+    public long getTotal() throws EventProcessorException {
+        if (this.total < 0) {
+            fetchPageIfNeeded();
+        }
+        return this.total;
+    }
+
+    @Override
+    public boolean hasNext() throws EventProcessorException {
+        fetchPageIfNeeded();
+        return this.index < this.page.length;
+    }
+
+    @Override
+    public long peek() throws EventProcessorException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.page[this.index];
+    }
+
+    @Override
+    public long next() throws EventProcessorException {
+        long timestamp = peek();
+        this.index++;
+        return timestamp;
+    }
+
+    /*
+     * Runs the search of a page (with the metrics and the admission control of the searches)
+     */
+    interface PageSearch {
+        SearchResult search(SearchesConfig config) throws EventProcessorException;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/*
+ * Aggregation computed on the messages of a stream, which is compared to the threshold of the stream
+ */
+public enum SeriesType {
+
+    // number of messages (no field)
+    @JsonProperty("COUNT")
+    COUNT("COUNT", "count"),
+
+    // number of distinct values of the field
+    @JsonProperty("CARDINALITY")
+    CARDINALITY("CARDINALITY", "number of distinct values"),
+
+    @JsonProperty("SUM")
+    SUM("SUM", "sum"),
+
+    @JsonProperty("AVG")
+    AVG("AVG", "average"),
+
+    @JsonProperty("MIN")
+    MIN("MIN", "minimum"),
+
+    @JsonProperty("MAX")
+    MAX("MAX", "maximum");
+
+    private final String description;
+    private final String label;
+
+    SeriesType(String description, String label) {
+        this.description = description;
+        this.label = label;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // wording of the series in the description of the events
+    public String getLabel() {
+        return label;
+    }
+
+    public static SeriesType fromString(String text) {
+        for (SeriesType seriesType: SeriesType.values()) {
+            if (seriesType.description.equals(text)) {
+                return seriesType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown SeriesType value: " + text);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.joda.time.DateTime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/*
+ * Counts of both streams per group, kept between the executions of a rule.
+ * The window (searchWithinMs) is split into hops (executeEveryMs): each hop holds the counts of the messages in
+ * [end - executeEveryMs, end). When the window slides, only the new hops have to be searched and the hops which
+ * fell out of the window are evicted.
+ */
+public class SlidingWindow {
+
+    // version of the binary snapshot format, to increment when the format changes
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final String fingerprint;
+    private final long windowSize;
+    private final long hopSize;
+    private final NavigableMap<Long, Map<GroupKey, long[]>> hops;
+    private final Map<GroupKey, long[]> totals;
+
+    SlidingWindow(String fingerprint, long windowSize, long hopSize) {
+        this.fingerprint = fingerprint;
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.hops = new TreeMap<>();
+        this.totals = new LinkedHashMap<>();
+    }
+
+    /*
+     * Identifies the configuration parameters which the counts depend on. When they change, the counts must be reset.
+     */
+    static String fingerprint(CorrelationCountProcessorConfig configuration) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putString(hasher, configuration.stream());
+        putString(hasher, configuration.searchQuery());
+        putString(hasher, configuration.additionalStream());
+        putString(hasher, configuration.additionalSearchQuery());
+        hasher.putInt(configuration.groupingFields().size());
+        for (String field: configuration.groupingFields()) {
+            putString(hasher, field);
+        }
+        hasher.putLong(configuration.searchWithinMs());
+        hasher.putLong(configuration.executeEveryMs());
+        return hasher.hash().toString();
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        hasher.putInt(value.length());
+        hasher.putString(value, StandardCharsets.UTF_8);
+    }
+
+    String getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /*
+     * Returns the end of the most recent hop, or Long.MIN_VALUE if the window is empty
+     */
+    synchronized long getEnd() {
+        if (this.hops.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        return this.hops.lastKey();
+    }
+
+    synchronized boolean isExpiredAt(long now) {
+        return getEnd() <= now - this.windowSize;
+    }
+
+    /*
+     * Slides the window so that it ends at the given time (in epoch milliseconds): evicts the hops which are not
+     * in the window anymore, and returns the ends of the hops which are missing, from the oldest to the most recent.
+     * When the new end is not aligned on the hops already counted, all the counts are dropped.
+     */
+    public synchronized List<Long> slideTo(long end) {
+        if (!this.hops.isEmpty()) {
+            long lastEnd = this.hops.lastKey();
+            if (end < lastEnd || (end - lastEnd) % this.hopSize != 0) {
+                this.hops.clear();
+                this.totals.clear();
+            }
+        }
+
+        long oldestEnd = end - this.windowSize + this.hopSize;
+        NavigableMap<Long, Map<GroupKey, long[]>> expiredHops = this.hops.headMap(oldestEnd, false);
+        for (Map<GroupKey, long[]> hop: expiredHops.values()) {
+            subtract(hop);
+        }
+        expiredHops.clear();
+
+        List<Long> missingHops = new ArrayList<>();
+        for (long hopEnd = oldestEnd; hopEnd <= end; hopEnd += this.hopSize) {
+            if (!this.hops.containsKey(hopEnd)) {
+                missingHops.add(hopEnd);
+            }
+        }
+        return missingHops;
+    }
+
+    private void subtract(Map<GroupKey, long[]> hop) {
+        for (Map.Entry<GroupKey, long[]> entry: hop.entrySet()) {
+            long[] total = this.totals.get(entry.getKey());
+            long[] counts = entry.getValue();
+            total[0] -= counts[0];
+            total[1] -= counts[1];
+            if (total[0] == 0 && total[1] == 0) {
+                this.totals.remove(entry.getKey());
+            }
+        }
+    }
+
+    /*
+     * Stores the counts of the hop ending at the given time (in epoch milliseconds)
+     */
+    public synchronized void addHop(long end, Collection<CorrelationCountResult> results) {
+        Map<GroupKey, long[]> hop = new HashMap<>(results.size());
+        for (CorrelationCountResult result: results) {
+            GroupKey key = GroupKey.of(result.getGroupByFields().getValues());
+            long[] counts = hop.computeIfAbsent(key, k -> new long[2]);
+            counts[0] += result.getFirstStreamCount();
+            counts[1] += result.getSecondStreamCount();
+        }
+        putHop(end, hop);
+    }
+
+    private void putHop(long end, Map<GroupKey, long[]> hop) {
+        Map<GroupKey, long[]> previousHop = this.hops.put(end, hop);
+        if (previousHop != null) {
+            subtract(previousHop);
+        }
+        for (Map.Entry<GroupKey, long[]> entry: hop.entrySet()) {
+            long[] total = this.totals.computeIfAbsent(entry.getKey(), k -> new long[2]);
+            total[0] += entry.getValue()[0];
+            total[1] += entry.getValue()[1];
+        }
+    }
+
+    /*
+     * Returns the counts of the whole window, for each group (with the names of the group by fields of the layout)
+     */
+    public synchronized List<CorrelationCountResult> getResults(DateTime timestamp, GroupByFields.Layout layout) {
+        ImmutableList.Builder<CorrelationCountResult> results = ImmutableList.builderWithExpectedSize(this.totals.size());
+        for (Map.Entry<GroupKey, long[]> entry: this.totals.entrySet()) {
+            long[] total = entry.getValue();
+            results.add(new CorrelationCountResult(timestamp, layout.with(entry.getKey().getValues()), total[0], total[1]));
+        }
+        return results.build();
+    }
+
+    /*
+     * Serializes the hops of the window into a compact binary snapshot:
+     * version, fingerprint, window size, hop size, then for each hop its end and the counts of its groups.
+     * The totals are not stored, they are recomputed from the hops.
+     */
+    public synchronized byte[] toSnapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(SNAPSHOT_VERSION);
+            writeString(output, this.fingerprint);
+            output.writeLong(this.windowSize);
+            output.writeLong(this.hopSize);
+            output.writeInt(this.hops.size());
+            for (Map.Entry<Long, Map<GroupKey, long[]>> hop: this.hops.entrySet()) {
+                output.writeLong(hop.getKey());
+                output.writeInt(hop.getValue().size());
+                for (Map.Entry<GroupKey, long[]> group: hop.getValue().entrySet()) {
+                    List<String> values = group.getKey().getValues();
+                    output.writeInt(values.size());
+                    for (String value: values) {
+                        writeString(output, value);
+                    }
+                    output.writeLong(group.getValue()[0]);
+                    output.writeLong(group.getValue()[1]);
+                }
+            }
+        } catch (IOException e) {
+            // can not happen when writing into memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Rebuilds a window from a snapshot. Fails with an IOException when the snapshot is corrupted or of another version.
+     */
+    public static SlidingWindow fromSnapshot(byte[] snapshot) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+            int version = input.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            SlidingWindow window = new SlidingWindow(readString(input), input.readLong(), input.readLong());
+            int hopCount = input.readInt();
+            for (int i = 0; i < hopCount; i++) {
+                long end = input.readLong();
+                int groupCount = input.readInt();
+                Map<GroupKey, long[]> hop = new HashMap<>(groupCount);
+                for (int j = 0; j < groupCount; j++) {
+                    int valueCount = input.readInt();
+                    ImmutableList.Builder<String> values = ImmutableList.builderWithExpectedSize(valueCount);
+                    for (int k = 0; k < valueCount; k++) {
+                        values.add(readString(input));
+                    }
+                    hop.put(GroupKey.of(values.build()), new long[] { input.readLong(), input.readLong() });
+                }
+                window.putHop(end, hop);
+            }
+            return window;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted snapshot", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.bson.BsonMaximumSizeExceededException;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.graylog2.database.MongoConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Stores the snapshots of the sliding windows in MongoDB, so that they survive restarts and can be taken over by
+ * another node. The snapshots are only an acceleration: when one can not be read, the window is recomputed.
+ */
+@Singleton
+public class SlidingWindowPersistence {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlidingWindowPersistence.class);
+
+    private static final String COLLECTION_NAME = "correlation_count_state";
+    private static final String FIELD_ID = "_id";
+    private static final String FIELD_FINGERPRINT = "fingerprint";
+    private static final String FIELD_END = "end";
+    private static final String FIELD_SNAPSHOT = "snapshot";
+    private static final String FIELD_UPDATED_AT = "updated_at";
+    // the states of the rules which were not executed for this long (deleted or disabled rules) are removed
+    private static final long EXPIRATION_DAYS = 7;
+
+    private final MongoCollection<Document> collection;
+
+    @Inject
+    public SlidingWindowPersistence(MongoConnection mongoConnection) {
+        this.collection = mongoConnection.getMongoDatabase().getCollection(COLLECTION_NAME);
+        this.collection.createIndex(Indexes.ascending(FIELD_UPDATED_AT), new IndexOptions().expireAfter(EXPIRATION_DAYS, TimeUnit.DAYS));
+    }
+
+    /*
+     * Returns the window stored for the event definition, if there is one which matches the fingerprint
+     */
+    public Optional<SlidingWindow> load(String eventDefinitionId, String fingerprint) {
+        try {
+            Document document = this.collection.find(Filters.eq(FIELD_ID, eventDefinitionId)).first();
+            if (document == null) {
+                return Optional.empty();
+            }
+            if (!fingerprint.equals(document.getString(FIELD_FINGERPRINT))) {
+                LOG.debug("Ignoring the state of correlation <{}>: the rule changed", eventDefinitionId);
+                return Optional.empty();
+            }
+            SlidingWindow window = SlidingWindow.fromSnapshot(document.get(FIELD_SNAPSHOT, Binary.class).getData());
+            return Optional.of(window);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not load the state of correlation <{}>, its messages will be fully searched", eventDefinitionId, e);
+            return Optional.empty();
+        }
+    }
+
+    public void save(String eventDefinitionId, SlidingWindow window) {
+        byte[] snapshot = window.toSnapshot();
+        Document document = new Document(FIELD_ID, eventDefinitionId)
+                .append(FIELD_FINGERPRINT, window.getFingerprint())
+                .append(FIELD_END, window.getEnd())
+                .append(FIELD_SNAPSHOT, new Binary(snapshot))
+                .append(FIELD_UPDATED_AT, Instant.now());
+        try {
+            this.collection.replaceOne(Filters.eq(FIELD_ID, eventDefinitionId), document, new ReplaceOptions().upsert(true));
+        } catch (BsonMaximumSizeExceededException e) {
+            // too many groups to fit in a document: the window will be recomputed at the next execution
+            LOG.warn("Could not save the state of correlation <{}>: its snapshot of {} bytes is too large", eventDefinitionId, snapshot.length, e);
+        } catch (MongoException e) {
+            LOG.warn("Could not save the state of correlation <{}>", eventDefinitionId, e);
+        }
+    }
+}
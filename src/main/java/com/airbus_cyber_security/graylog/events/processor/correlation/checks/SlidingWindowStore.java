@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Sliding windows of the rules evaluated incrementally, by event definition identifier.
+ * Processors are created for each execution, so the windows have to be kept outside of them.
+ * The windows are also persisted: a window which is not in memory (after a restart, or when another node ran the
+ * rule) is loaded from its last snapshot.
+ */
+@Singleton
+public class SlidingWindowStore {
+
+    private final ConcurrentMap<String, SlidingWindow> windows = new ConcurrentHashMap<>();
+    private final SlidingWindowPersistence persistence;
+
+    @Inject
+    public SlidingWindowStore(SlidingWindowPersistence persistence) {
+        this.persistence = persistence;
+    }
+
+    /*
+     * Returns the window of the event definition, to be slid up to the given end (in epoch milliseconds).
+     * The window in memory is used when it is up to date. Otherwise (it is missing, or another node ran the rule
+     * meanwhile), the persisted window is used if it is more recent. A new window is created when there is none, or
+     * when the configuration changed in a way which invalidates the counts.
+     */
+    public SlidingWindow get(String eventDefinitionId, CorrelationCountProcessorConfig configuration, long end) {
+        String fingerprint = SlidingWindow.fingerprint(configuration);
+        SlidingWindow window = this.windows.get(eventDefinitionId);
+        SlidingWindow currentWindow = window;
+        if (currentWindow != null && !currentWindow.getFingerprint().equals(fingerprint)) {
+            currentWindow = null;
+        }
+        if (currentWindow != null && currentWindow.getEnd() >= end - configuration.executeEveryMs()) {
+            return currentWindow;
+        }
+        // the persisted window is loaded outside of the map, so that a slow load does not block the other rules
+        Optional<SlidingWindow> persistedWindow = this.persistence.load(eventDefinitionId, fingerprint);
+        if (persistedWindow.isPresent() && (currentWindow == null || currentWindow.getEnd() < persistedWindow.get().getEnd())) {
+            return publish(eventDefinitionId, window, persistedWindow.get());
+        }
+        if (currentWindow != null) {
+            return currentWindow;
+        }
+        return publish(eventDefinitionId, window, new SlidingWindow(fingerprint, configuration.searchWithinMs(), configuration.executeEveryMs()));
+    }
+
+    /*
+     * Replaces the window of the event definition which was read from the map (null when there was none).
+     * When another execution published its window meanwhile, that window is returned instead.
+     */
+    private SlidingWindow publish(String eventDefinitionId, SlidingWindow previousWindow, SlidingWindow window) {
+        if (previousWindow == null) {
+            SlidingWindow publishedWindow = this.windows.putIfAbsent(eventDefinitionId, window);
+            return publishedWindow == null ? window : publishedWindow;
+        }
+        if (this.windows.replace(eventDefinitionId, previousWindow, window)) {
+            return window;
+        }
+        return this.windows.getOrDefault(eventDefinitionId, window);
+    }
+
+    /*
+     * Persists the window of the event definition, to be called once the window is up to date
+     */
+    public void save(String eventDefinitionId, SlidingWindow window) {
+        this.persistence.save(eventDefinitionId, window);
+    }
+
+    /*
+     * Drops the windows whose hops would all be expired at the given time (in epoch milliseconds),
+     * for instance those of rules which were disabled or deleted.
+     */
+    public void evictExpired(long now) {
+        this.windows.values().removeIf(window -> window.isExpiredAt(now));
+    }
+}
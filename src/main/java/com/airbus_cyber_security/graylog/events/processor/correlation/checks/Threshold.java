@@ -27,8 +27,19 @@ public class Threshold {
         this.value = value;
     }
 
-    public boolean isReached(long count) {
-        return (((this.type == ThresholdType.MORE) && (count > this.value)) ||
-                ((this.type == ThresholdType.LESS) && (count < this.value)));
+    /*
+     * The value is the number of messages, or the result of any other series (never reached by NaN)
+     */
+    public boolean isReached(double value) {
+        return (((this.type == ThresholdType.MORE) && (value > this.value)) ||
+                ((this.type == ThresholdType.LESS) && (value < this.value)));
+    }
+
+    /*
+     * Whether the threshold is reached by any count between minimumCount and maximumCount (both included).
+     * Since the threshold is monotonic, it is enough to check both bounds.
+     */
+    public boolean isReachedBetween(long minimumCount, long maximumCount) {
+        return isReached((double) minimumCount) || isReached((double) maximumCount);
     }
 }
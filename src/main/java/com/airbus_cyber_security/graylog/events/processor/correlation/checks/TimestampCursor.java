@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import org.graylog.events.processor.EventProcessorException;
+
+/*
+ * Sorted timestamps (in epoch milliseconds) of the messages of a group, read one by one.
+ * The timestamps may be retrieved only as they are read, so that the order check can stop before all of them are
+ * retrieved, and without having all of them in memory.
+ */
+public interface TimestampCursor {
+
+    /*
+     * The total number of timestamps
+     */
+    long getTotal() throws EventProcessorException;
+
+    boolean hasNext() throws EventProcessorException;
+
+    /*
+     * Returns the next timestamp, without moving to it
+     */
+    long peek() throws EventProcessorException;
+
+    long next() throws EventProcessorException;
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import java.util.Arrays;
+
+/*
+ * Number of messages per distinct timestamp (in epoch milliseconds), by increasing timestamps.
+ */
+public class TimestampHistogram {
+
+    private final long[] timestamps;
+    private final long[] counts;
+    private final long total;
+
+    private TimestampHistogram(long[] timestamps, long[] counts, long total) {
+        this.timestamps = timestamps;
+        this.counts = counts;
+        this.total = total;
+    }
+
+    /*
+     * Builds the histogram of the timestamps of some messages (in any order).
+     */
+    public static TimestampHistogram of(long[] timestamps) {
+        Builder builder = new Builder();
+        for (long timestamp: timestamps) {
+            builder.add(timestamp, 1);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return this.timestamps.length;
+    }
+
+    public long getTimestamp(int index) {
+        return this.timestamps[index];
+    }
+
+    public long getCount(int index) {
+        return this.counts[index];
+    }
+
+    public long getTotal() {
+        return this.total;
+    }
+
+    public static class Builder {
+        private long[] timestamps = new long[16];
+        private long[] counts = new long[16];
+        private int size = 0;
+
+        public Builder add(long timestamp, long count) {
+            if (this.size == this.timestamps.length) {
+                this.timestamps = Arrays.copyOf(this.timestamps, 2 * this.size);
+                this.counts = Arrays.copyOf(this.counts, 2 * this.size);
+            }
+            this.timestamps[this.size] = timestamp;
+            this.counts[this.size] = count;
+            this.size++;
+            return this;
+        }
+
+        public TimestampHistogram build() {
+            long[] sortedTimestamps = Arrays.copyOf(this.timestamps, this.size);
+            Arrays.sort(sortedTimestamps);
+            int distinctCount = 0;
+            for (int i = 0; i < sortedTimestamps.length; i++) {
+                if (i == 0 || sortedTimestamps[i] != sortedTimestamps[distinctCount - 1]) {
+                    sortedTimestamps[distinctCount] = sortedTimestamps[i];
+                    distinctCount++;
+                }
+            }
+            long[] distinctTimestamps = Arrays.copyOf(sortedTimestamps, distinctCount);
+            long[] distinctCounts = new long[distinctCount];
+            long total = 0;
+            for (int i = 0; i < this.size; i++) {
+                distinctCounts[Arrays.binarySearch(distinctTimestamps, this.timestamps[i])] += this.counts[i];
+                total += this.counts[i];
+            }
+            return new TimestampHistogram(distinctTimestamps, distinctCounts, total);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.EventBus;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventDefinitionDeleted;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CorrelationCountMetricsTest {
+
+    private static EventDefinition rule(String identifier) {
+        EventDefinition eventDefinition = Mockito.mock(EventDefinition.class);
+        Mockito.when(eventDefinition.id()).thenReturn(identifier);
+        return eventDefinition;
+    }
+
+    @Test
+    public void forRuleShouldReturnTheSameMetricsForEachExecutionOfTheRule() {
+        CorrelationCountMetrics subject = new CorrelationCountMetrics(new MetricRegistry());
+
+        RuleMetrics metrics = subject.forRule(rule("rule"));
+
+        assertThat(subject.forRule(rule("rule"))).isSameAs(metrics);
+        assertThat(metrics.getCorrelatedStream(0)).isSameAs(metrics.getCorrelatedStream(0));
+    }
+
+    @Test
+    public void metricsShouldBeRemovedWhenTheEventDefinitionIsDeleted() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        EventBus eventBus = new EventBus();
+        CorrelationCountMetrics subject = new CorrelationCountMetrics(metricRegistry, eventBus);
+        subject.forRule(rule("other rule"));
+        Set<String> otherRuleMetrics = Set.copyOf(metricRegistry.getNames());
+        RuleMetrics metrics = subject.forRule(rule("rule"));
+        metrics.getCorrelatedStream(0);
+
+        eventBus.post(new EventDefinitionDeleted("rule"));
+
+        assertThat(metricRegistry.getNames()).isEqualTo(otherRuleMetrics);
+        assertThat(subject.forRule(rule("rule"))).isNotSameAs(metrics);
+    }
+}
@@ -17,60 +17,380 @@
 
 package com.airbus_cyber_security.graylog.events.processor.correlation;
 
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.AdaptiveScheduler;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountCheckExecutor;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountResult;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountSearches;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.GroupByFields;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderCheckType;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SeriesType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SlidingWindowPersistence;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SlidingWindowStore;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.ThresholdType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.TimestampCursor;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.TimestampHistogram;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
+import org.graylog.events.event.Event;
 import org.graylog.events.event.EventFactory;
+import org.graylog.events.event.EventWithContext;
 import org.graylog.events.notifications.EventNotificationSettings;
 import org.graylog.events.processor.DBEventProcessorStateService;
 import org.graylog.events.processor.EventDefinitionDto;
 import org.graylog.events.processor.EventProcessorDependencyCheck;
+import org.graylog.events.processor.EventProcessorException;
 import org.graylog.events.processor.EventProcessorPreconditionException;
+import org.graylog.scheduler.clock.JobSchedulerClock;
+import org.graylog.scheduler.clock.JobSchedulerSystemClock;
 import org.graylog2.plugin.TestMessageFactory;
 import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 
 public class CorrelationCountProcessorTest {
 
+    private final CorrelationCountSearches correlationCountSearches = Mockito.mock(CorrelationCountSearches.class);
+    private final EventProcessorDependencyCheck eventProcessorDependencyCheck = Mockito.mock(EventProcessorDependencyCheck.class);
+    private final DBEventProcessorStateService stateService = Mockito.mock(DBEventProcessorStateService.class);
+    private final EventFactory eventFactory = Mockito.mock(EventFactory.class);
+
+    @Before
+    public void setUp() {
+        Mockito.when(this.eventProcessorDependencyCheck.hasMessagesIndexedUpTo(Mockito.any())).thenReturn(true);
+        Mockito.when(this.eventFactory.createEvent(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(Event.class));
+    }
+
     @Test
     public void testEvents() {
         DateTime now = DateTime.now(DateTimeZone.UTC);
         AbsoluteRange timeRange = AbsoluteRange.create(now.minusHours(1), now.plusHours(1));
-        EventDefinitionDto eventDefinitionDto = EventDefinitionDto.builder()
+        EventDefinitionDto eventDefinitionDto = buildEventDefinition(getCorrelationCountProcessorConfig());
+        Mockito.when(this.eventProcessorDependencyCheck.hasMessagesIndexedUpTo(Mockito.any())).thenReturn(false);
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(eventDefinitionDto);
+        assertThatCode(() -> eventProcessor.createEvents(this.eventFactory, buildParameters(timeRange), (events) -> {
+        }))
+                .hasMessageContaining(eventDefinitionDto.title())
+                .hasMessageContaining(eventDefinitionDto.id())
+                .hasMessageContaining(timeRange.from().toString())
+                .hasMessageContaining(timeRange.to().toString())
+                .isInstanceOf(EventProcessorPreconditionException.class);
+    }
+
+    @Test
+    public void createEventsShouldNotSearchMessagesWhenMessagesOrderIsAny() throws EventProcessorException {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        CorrelationCountResult result = new CorrelationCountResult(now, GroupByFields.layout(ImmutableList.of()).with(ImmutableList.of()), 101, 101);
+        Mockito.when(this.correlationCountSearches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(ImmutableList.of(result));
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(getCorrelationCountProcessorConfig()));
+        List<EventWithContext> events = new ArrayList<>();
+        eventProcessor.createEvents(this.eventFactory, buildParameters(now), events::addAll);
+
+        assertThat(events).hasSize(1);
+        Mockito.verify(this.correlationCountSearches, Mockito.never()).searchTimestamps(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    public void createEventsShouldRecordMetricsOfTheRule() throws EventProcessorException {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        CorrelationCountResult reached = new CorrelationCountResult(now, GroupByFields.layout(ImmutableList.of()).with(ImmutableList.of()), 101, 101);
+        CorrelationCountResult notReached = new CorrelationCountResult(now, GroupByFields.layout(ImmutableList.of()).with(ImmutableList.of()), 1, 101);
+        Mockito.when(this.correlationCountSearches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(ImmutableList.of(reached, notReached));
+        MetricRegistry metricRegistry = new MetricRegistry();
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(getCorrelationCountProcessorConfig()),
+                new SlidingWindowStore(Mockito.mock(SlidingWindowPersistence.class)), new AdaptiveScheduler(), metricRegistry, JobSchedulerSystemClock.INSTANCE);
+        eventProcessor.createEvents(this.eventFactory, buildParameters(now), (events) -> {});
+
+        String prefix = MetricRegistry.name(CorrelationCountProcessor.class, "dto-id");
+        assertThat(metricRegistry.getTimers().get(prefix + ".execution.time").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.getHistograms().get(prefix + ".groups.thresholds_reached").getSnapshot().getMax()).isEqualTo(1);
+        assertThat(metricRegistry.getHistograms().get(prefix + ".events.emitted").getSnapshot().getMax()).isEqualTo(1);
+    }
+
+    @Test
+    public void createEventsShouldCompareTheValuesOfTheSeriesToTheThresholds() throws EventProcessorException {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .series(SeriesType.CARDINALITY)
+                .seriesField("user")
+                .build();
+        GroupByFields.Layout layout = GroupByFields.layout(ImmutableList.of());
+        // many messages, but only a few distinct users
+        CorrelationCountResult notReached = new CorrelationCountResult(now, layout.with(ImmutableList.of()), 1000, 101, 3, 101, null, null);
+        CorrelationCountResult reached = new CorrelationCountResult(now, layout.with(ImmutableList.of()), 200, 101, 150, 101, null, null);
+        Mockito.when(this.correlationCountSearches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(ImmutableList.of(notReached, reached));
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(configuration));
+        List<EventWithContext> events = new ArrayList<>();
+        eventProcessor.createEvents(this.eventFactory, buildParameters(now), events::addAll);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).messageContext().get().getMessage()).contains("whose number of distinct values of user was 150");
+    }
+
+    @Test
+    public void createEventsShouldCheckTheThresholdsOfTheCorrelatedStreams() throws EventProcessorException {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .correlatedStreams(ImmutableList.of(buildCorrelatedStream()))
+                .build();
+        Event event = Mockito.mock(Event.class);
+        Mockito.when(this.eventFactory.createEvent(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(event);
+        GroupByFields.Layout layout = GroupByFields.layout(ImmutableList.of());
+        CorrelationCountResult notReached = new CorrelationCountResult(now, layout.with(ImmutableList.of()), 101, 101, 101, 101, new long[] {10}, null, null);
+        CorrelationCountResult reached = new CorrelationCountResult(now, layout.with(ImmutableList.of()), 101, 101, 101, 101, new long[] {11}, null, null);
+        Mockito.when(this.correlationCountSearches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(ImmutableList.of(notReached, reached));
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(configuration));
+        List<EventWithContext> events = new ArrayList<>();
+        eventProcessor.createEvents(this.eventFactory, buildParameters(now), events::addAll);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).messageContext().get().getMessage()).contains("the stream correlated stream had 11 messages");
+        Mockito.verify(event).addSourceStream("correlated stream");
+    }
+
+    @Test
+    public void sourceMessagesForEventShouldShareTheLimitBetweenAllTheStreams() throws EventProcessorException {
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .correlatedStreams(ImmutableList.of(buildCorrelatedStream()))
+                .build();
+        Mockito.when(this.correlationCountSearches.scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("main stream"), Mockito.any(), Mockito.anyLong(), Mockito.any(), Mockito.any()))
+                .thenReturn(1L);
+        Mockito.when(this.correlationCountSearches.scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("additional stream"), Mockito.any(), Mockito.anyLong(), Mockito.any(), Mockito.any()))
+                .thenReturn(5L);
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(configuration));
+        eventProcessor.sourceMessagesForEvent(buildEvent(DateTime.now(DateTimeZone.UTC)), messages -> {}, 12);
+
+        Mockito.verify(this.correlationCountSearches).scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("main stream"), Mockito.any(), Mockito.eq(4L), Mockito.any(), Mockito.any());
+        Mockito.verify(this.correlationCountSearches).scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("additional stream"), Mockito.any(), Mockito.eq(6L), Mockito.any(), Mockito.any());
+        Mockito.verify(this.correlationCountSearches).scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("correlated stream"), Mockito.any(), Mockito.eq(6L), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void createEventsShouldReadTheTimestampsOfGroupsWithManyMessagesByPages() throws EventProcessorException {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .messagesOrder(OrderType.BEFORE)
+                .build();
+        CorrelationCountResult result = new CorrelationCountResult(now, GroupByFields.layout(ImmutableList.of()).with(ImmutableList.of()), 1000, 1000);
+        Mockito.when(this.correlationCountSearches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(ImmutableList.of(result));
+        TimestampCursor emptyCursor = Mockito.mock(TimestampCursor.class);
+        Mockito.when(this.correlationCountSearches.searchSortedTimestamps(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyLong(), Mockito.anyBoolean(), Mockito.any()))
+                .thenReturn(emptyCursor);
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(configuration));
+        eventProcessor.createEvents(this.eventFactory, buildParameters(now), (events) -> {});
+
+        Mockito.verify(this.correlationCountSearches, Mockito.times(2)).searchSortedTimestamps(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.eq(now), Mockito.anyLong(), Mockito.eq(true), Mockito.any());
+        Mockito.verify(this.correlationCountSearches, Mockito.never()).searchTimestamps(Mockito.any(), Mockito.any(), Mockito.argThat(groups -> !groups.isEmpty()), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    public void createEventsShouldCheckOrderFromAggregationsWhenOrderCheckIsAggregation() throws EventProcessorException {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .messagesOrder(OrderType.BEFORE)
+                .orderCheck(OrderCheckType.AGGREGATION)
+                .build();
+        long messagesTimestamp = now.getMillis();
+        TimestampHistogram firstStreamTimestamps = new TimestampHistogram.Builder().add(messagesTimestamp, 101).build();
+        TimestampHistogram secondStreamTimestamps = new TimestampHistogram.Builder().add(messagesTimestamp + 1, 101).build();
+        GroupByFields.Layout layout = GroupByFields.layout(ImmutableList.of("field"));
+        CorrelationCountResult inOrder = new CorrelationCountResult(now, layout.with(ImmutableList.of("a")), 101, 101, firstStreamTimestamps, secondStreamTimestamps);
+        CorrelationCountResult outOfOrder = new CorrelationCountResult(now, layout.with(ImmutableList.of("b")), 101, 101, secondStreamTimestamps, firstStreamTimestamps);
+        Mockito.when(this.correlationCountSearches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(ImmutableList.of(inOrder, outOfOrder));
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(configuration));
+        List<EventWithContext> events = new ArrayList<>();
+        eventProcessor.createEvents(this.eventFactory, buildParameters(now), events::addAll);
+
+        assertThat(events).hasSize(1);
+        Mockito.verify(this.correlationCountSearches, Mockito.never()).searchTimestamps(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    public void createEventsShouldOnlySearchTheNewHopWhenIncremental() throws EventProcessorException {
+        DateTime end = new DateTime(2024, 1, 1, 1, 0, DateTimeZone.UTC);
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .searchWithinMs(3 * 60 * 1000)
+                .executeEveryMs(60 * 1000)
+                .incremental(true)
+                .build();
+        EventDefinitionDto eventDefinitionDto = buildEventDefinition(configuration);
+        Mockito.when(this.correlationCountSearches.countPerHop(Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            List<TimeRange> hops = invocation.getArgument(0);
+            return Collections.nCopies(hops.size(), ImmutableList.of());
+        });
+        SlidingWindowStore slidingWindowStore = new SlidingWindowStore(Mockito.mock(SlidingWindowPersistence.class));
+
+        for (int i = 0; i < 2; i++) {
+            DateTime to = end.plusMinutes(i);
+            CorrelationCountProcessor eventProcessor = buildProcessor(eventDefinitionDto, slidingWindowStore, new AdaptiveScheduler(),
+                    new MetricRegistry(), JobSchedulerSystemClock.INSTANCE);
+            eventProcessor.createEvents(this.eventFactory, buildParameters(AbsoluteRange.create(to.minusMinutes(3), to)), (events) -> {});
+        }
+
+        Mockito.verify(this.correlationCountSearches).countPerHop(Mockito.argThat(hops -> hops.size() == 3), Mockito.any(), Mockito.any());
+        Mockito.verify(this.correlationCountSearches).countPerHop(Mockito.argThat(hops -> hops.size() == 1), Mockito.any(), Mockito.any());
+        Mockito.verify(this.correlationCountSearches, Mockito.never()).count(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void createEventsShouldEvaluateEveryWindowOfTheTimeRangeWhenIncremental() throws EventProcessorException {
+        DateTime from = new DateTime(2024, 1, 1, 1, 0, DateTimeZone.UTC);
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .searchWithinMs(3 * 60 * 1000)
+                .executeEveryMs(60 * 1000)
+                .incremental(true)
+                .build();
+        GroupByFields.Layout layout = GroupByFields.layout(ImmutableList.of());
+        // the messages are all in the first hop: only the first window reaches the thresholds
+        Mockito.when(this.correlationCountSearches.countPerHop(Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            List<TimeRange> hops = invocation.getArgument(0);
+            List<List<CorrelationCountResult>> results = new ArrayList<>();
+            for (TimeRange hop: hops) {
+                if (hop.getTo().equals(from.plusMinutes(1))) {
+                    results.add(List.of(new CorrelationCountResult(hop.getTo(), layout.with(ImmutableList.of()), 101, 101)));
+                } else {
+                    results.add(List.of());
+                }
+            }
+            return results;
+        });
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(configuration));
+        List<EventWithContext> events = new ArrayList<>();
+        // the executions are late: the time range covers three windows
+        eventProcessor.createEvents(this.eventFactory, buildParameters(AbsoluteRange.create(from, from.plusMinutes(5))), events::addAll);
+
+        assertThat(events).hasSize(1);
+        Mockito.verify(this.eventFactory).createEvent(Mockito.any(), Mockito.eq(from.plusMinutes(3)), Mockito.any());
+        Mockito.verify(this.correlationCountSearches).countPerHop(Mockito.argThat(hops -> hops.size() == 5), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void sourceMessagesForEventShouldSearchTheAdditionalStreamWithTheRemainingLimit() throws EventProcessorException {
+        Mockito.when(this.correlationCountSearches.scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("main stream"), Mockito.any(), Mockito.anyLong(), Mockito.any(), Mockito.any()))
+                .thenReturn(3L);
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(getCorrelationCountProcessorConfig()));
+        eventProcessor.sourceMessagesForEvent(buildEvent(DateTime.now(DateTimeZone.UTC)), messages -> {}, 10);
+
+        Mockito.verify(this.correlationCountSearches).scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("main stream"), Mockito.any(), Mockito.eq(5L), Mockito.any(), Mockito.any());
+        Mockito.verify(this.correlationCountSearches).scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("additional stream"), Mockito.any(), Mockito.eq(7L), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void sourceMessagesForEventShouldShareTheLimitBetweenBothStreams() throws EventProcessorException {
+        Mockito.when(this.correlationCountSearches.scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("main stream"), Mockito.any(), Mockito.anyLong(), Mockito.any(), Mockito.any()))
+                .thenReturn(5L);
+
+        CorrelationCountProcessor eventProcessor = buildProcessor(buildEventDefinition(getCorrelationCountProcessorConfig()));
+        eventProcessor.sourceMessagesForEvent(buildEvent(DateTime.now(DateTimeZone.UTC)), messages -> {}, 10);
+
+        Mockito.verify(this.correlationCountSearches).scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("main stream"), Mockito.any(), Mockito.eq(5L), Mockito.any(), Mockito.any());
+        Mockito.verify(this.correlationCountSearches).scrollMessages(Mockito.any(), Mockito.any(), Mockito.eq("additional stream"), Mockito.any(), Mockito.eq(5L), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void createEventsShouldStretchThePeriodOfTheExecutionsWhichLastLongerThanItWhenAdaptive() throws EventProcessorException {
+        DateTime end = new DateTime(2024, 1, 1, 1, 0, DateTimeZone.UTC);
+        CorrelationCountProcessorConfig configuration = getCorrelationCountProcessorConfig().toBuilder()
+                .searchWithinMs(5 * 60 * 1000)
+                .executeEveryMs(60 * 1000)
+                .adaptiveScheduling(true)
+                .maxExecuteEveryMs(3 * 60 * 1000)
+                .build();
+        EventDefinitionDto eventDefinitionDto = buildEventDefinition(configuration);
+        Mockito.when(this.correlationCountSearches.count(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(ImmutableList.of());
+        // the start and the end of the executions: the first one lasts 3 minutes, the second one 1 minute, the others are skipped
+        JobSchedulerClock clock = Mockito.mock(JobSchedulerClock.class);
+        Mockito.when(clock.nowUTC()).thenReturn(end.plusMinutes(5), end.plusMinutes(8), end.plusMinutes(8), end.plusMinutes(9), end.plusMinutes(9));
+        AdaptiveScheduler adaptiveScheduler = new AdaptiveScheduler();
+        MetricRegistry metricRegistry = new MetricRegistry();
+
+        for (int i = 0; i < 4; i++) {
+            DateTime to = end.plusMinutes(i);
+            CorrelationCountProcessor eventProcessor = buildProcessor(eventDefinitionDto, new SlidingWindowStore(Mockito.mock(SlidingWindowPersistence.class)),
+                    adaptiveScheduler, metricRegistry, clock);
+            eventProcessor.createEvents(this.eventFactory, buildParameters(AbsoluteRange.create(to.minusMinutes(5), to)), (events) -> {});
+        }
+
+        ArgumentCaptor<TimeRange> timeRanges = ArgumentCaptor.forClass(TimeRange.class);
+        Mockito.verify(this.correlationCountSearches, Mockito.times(2)).count(timeRanges.capture(), Mockito.any(), Mockito.any());
+        assertThat(timeRanges.getAllValues()).extracting(TimeRange::getTo).containsExactly(end, end.plusMinutes(3));
+        String prefix = MetricRegistry.name(CorrelationCountProcessor.class, "dto-id");
+        assertThat(metricRegistry.getCounters().get(prefix + ".schedule.skipped").getCount()).isEqualTo(2);
+        assertThat(metricRegistry.getHistograms().get(prefix + ".schedule.lag").getSnapshot().getMax()).isEqualTo(7 * 60 * 1000);
+    }
+
+    private EventDefinitionDto buildEventDefinition(CorrelationCountProcessorConfig configuration) {
+        return EventDefinitionDto.builder()
                 .id("dto-id")
                 .title("Test Correlation")
                 .description("A test correlation event processors")
-                .config(getCorrelationCountProcessorConfig())
+                .config(configuration)
                 .alert(false)
                 .keySpec(ImmutableList.of())
                 .notificationSettings(EventNotificationSettings.withGracePeriod(60000))
                 .priority(1)
                 .build();
-        CorrelationCountProcessorParameters parameters = CorrelationCountProcessorParameters.builder()
+    }
+
+    private CorrelationCountProcessor buildProcessor(EventDefinitionDto eventDefinitionDto) {
+        return buildProcessor(eventDefinitionDto, new SlidingWindowStore(Mockito.mock(SlidingWindowPersistence.class)), new AdaptiveScheduler(),
+                new MetricRegistry(), JobSchedulerSystemClock.INSTANCE);
+    }
+
+    private CorrelationCountProcessor buildProcessor(EventDefinitionDto eventDefinitionDto, SlidingWindowStore slidingWindowStore,
+                                                     AdaptiveScheduler adaptiveScheduler, MetricRegistry metricRegistry, JobSchedulerClock clock) {
+        return new CorrelationCountProcessor(eventDefinitionDto, this.eventProcessorDependencyCheck, this.stateService, this.correlationCountSearches,
+                slidingWindowStore, adaptiveScheduler, new CorrelationCountCheckExecutor(1, 1), new TestMessageFactory(),
+                new CorrelationCountMetrics(metricRegistry), clock);
+    }
+
+    private CorrelationCountProcessorParameters buildParameters(DateTime now) {
+        return buildParameters(AbsoluteRange.create(now.minusHours(1), now.plusHours(1)));
+    }
+
+    private CorrelationCountProcessorParameters buildParameters(AbsoluteRange timeRange) {
+        return CorrelationCountProcessorParameters.builder()
                 .timerange(timeRange)
                 .build();
-        CorrelationCountSearches correlationCountSearches = Mockito.mock(CorrelationCountSearches.class);
-        EventProcessorDependencyCheck eventProcessorDependencyCheck = Mockito.mock(EventProcessorDependencyCheck.class);
-        DBEventProcessorStateService stateService = Mockito.mock(DBEventProcessorStateService.class);
-        EventFactory eventFactory = Mockito.mock(EventFactory.class);
-
-        CorrelationCountProcessor eventProcessor = new CorrelationCountProcessor(eventDefinitionDto, eventProcessorDependencyCheck,
-                stateService, correlationCountSearches, new TestMessageFactory());
-        assertThatCode(() -> eventProcessor.createEvents(eventFactory, parameters, (events) -> {
-        }))
-                .hasMessageContaining(eventDefinitionDto.title())
-                .hasMessageContaining(eventDefinitionDto.id())
-                .hasMessageContaining(timeRange.from().toString())
-                .hasMessageContaining(timeRange.to().toString())
-                .isInstanceOf(EventProcessorPreconditionException.class);
+    }
+
+    private Event buildEvent(DateTime end) {
+        Event event = Mockito.mock(Event.class);
+        Mockito.when(event.getTimerangeStart()).thenReturn(end.minusMinutes(2));
+        Mockito.when(event.getTimerangeEnd()).thenReturn(end);
+        Mockito.when(event.getGroupByFields()).thenReturn(Map.of());
+        return event;
+    }
+
+    private CorrelatedStream buildCorrelatedStream() {
+        return CorrelatedStream.builder()
+                .stream("correlated stream")
+                .thresholdType(ThresholdType.MORE.getDescription())
+                .threshold(10)
+                .build();
     }
 
     private CorrelationCountProcessorConfig getCorrelationCountProcessorConfig() {
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.CorrelationCountResult;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.GroupByFields;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.SeriesType;
+import com.airbus_cyber_security.graylog.events.processor.correlation.checks.ThresholdType;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventDescriptionTemplateTest {
+
+    private static final DateTime TIMESTAMP = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final GroupByFields NO_FIELDS = GroupByFields.layout(ImmutableList.of()).with(ImmutableList.of());
+
+    @Test
+    public void renderShouldDescribeTheCountsOfBothStreams() {
+        EventDescriptionTemplate subject = new EventDescriptionTemplate(getConfiguration().build());
+
+        assertThat(subject.render(result(12, 3))).isEqualTo("The additional stream had 3 messages with trigger condition more than 2 messages "
+                + "and the main stream had 12 messages with trigger condition less than 10 messages in the last 120000 milliseconds. "
+                + "(Executes every: 60000 milliseconds)");
+    }
+
+    @Test
+    public void renderShouldDescribeTheOrderAndTheGroupingFields() {
+        CorrelationCountProcessorConfig configuration = getConfiguration()
+                .messagesOrder(OrderType.AFTER)
+                .groupingFields(ImmutableList.of("source", "user"))
+                .build();
+        EventDescriptionTemplate subject = new EventDescriptionTemplate(configuration);
+
+        assertThat(subject.render(result(1, 4))).isEqualTo("The additional stream had 4 messages with trigger condition more than 2 messages "
+                + OrderType.AFTER.getDescription() + " the main stream had 1 messages with trigger condition less than 10 messages "
+                + "in the last 120000 milliseconds with the same value of the fields source, user. (Executes every: 60000 milliseconds)");
+    }
+
+    @Test
+    public void renderShouldDescribeTheValuesOfTheSeries() {
+        CorrelationCountProcessorConfig configuration = getConfiguration()
+                .additionalSeries(SeriesType.CARDINALITY)
+                .additionalSeriesField("user")
+                .series(SeriesType.AVG)
+                .seriesField("bytes")
+                .build();
+        EventDescriptionTemplate subject = new EventDescriptionTemplate(configuration);
+        CorrelationCountResult result = new CorrelationCountResult(TIMESTAMP, NO_FIELDS, 12, 30, 10.5, 4, null, null);
+
+        assertThat(subject.render(result)).isEqualTo("The additional stream had 30 messages whose number of distinct values of user was 4, "
+                + "with trigger condition more than 2 and the main stream had 12 messages whose average of bytes was 10.5, "
+                + "with trigger condition less than 10 in the last 120000 milliseconds. (Executes every: 60000 milliseconds)");
+    }
+
+    @Test
+    public void renderShouldDescribeTheCountsOfTheCorrelatedStreams() {
+        CorrelatedStream correlatedStream = CorrelatedStream.builder()
+                .stream("correlated stream")
+                .thresholdType(ThresholdType.MORE.getDescription())
+                .threshold(5)
+                .messagesOrder(OrderType.BEFORE)
+                .build();
+        EventDescriptionTemplate subject = new EventDescriptionTemplate(getConfiguration().correlatedStreams(ImmutableList.of(correlatedStream)).build());
+        CorrelationCountResult result = new CorrelationCountResult(TIMESTAMP, NO_FIELDS, 1, 3, 1, 3, new long[] {6}, null, null);
+
+        assertThat(subject.render(result)).isEqualTo("The additional stream had 3 messages with trigger condition more than 2 messages "
+                + "and the main stream had 1 messages with trigger condition less than 10 messages, and the stream correlated stream "
+                + "had 6 messages with trigger condition more than 5 messages " + OrderType.BEFORE.getDescription() + " the main stream "
+                + "in the last 120000 milliseconds. (Executes every: 60000 milliseconds)");
+    }
+
+    private static CorrelationCountResult result(long countMainStream, long countAdditionalStream) {
+        return new CorrelationCountResult(TIMESTAMP, NO_FIELDS, countMainStream, countAdditionalStream);
+    }
+
+    private CorrelationCountProcessorConfig.Builder getConfiguration() {
+        return CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType(ThresholdType.MORE.getDescription())
+                .additionalThreshold(2)
+                .thresholdType(ThresholdType.LESS.getDescription())
+                .threshold(10)
+                .messagesOrder(OrderType.ANY)
+                .searchWithinMs(2 * 60 * 1000)
+                .executeEveryMs(60 * 1000)
+                .groupingFields(new ArrayList<>())
+                .comment("test comment")
+                .searchQuery("*")
+                .additionalSearchQuery("*");
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.OptionalLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveSchedulerTest {
+
+    private static final long HOP = 60 * 1000;
+    private static final long WINDOW = 10 * HOP;
+    private static final long END = 1_000 * HOP;
+
+    private static CorrelationCountProcessorConfig configuration(long maxExecuteEveryMs) {
+        return CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType("MORE")
+                .additionalThreshold(1)
+                .thresholdType("MORE")
+                .threshold(1)
+                .messagesOrder(OrderType.ANY)
+                .searchWithinMs(WINDOW)
+                .executeEveryMs(HOP)
+                .groupingFields(new ArrayList<>())
+                .comment("test comment")
+                .searchQuery("*")
+                .additionalSearchQuery("*")
+                .adaptiveScheduling(true)
+                .maxExecuteEveryMs(maxExecuteEveryMs)
+                .build();
+    }
+
+    @Test
+    public void planEndShouldNotMoveTheEndOfTheFirstExecution() {
+        AdaptiveScheduler subject = new AdaptiveScheduler();
+
+        assertEquals(OptionalLong.of(END), subject.planEnd("rule", configuration(5 * HOP), END, END + 20 * HOP));
+    }
+
+    @Test
+    public void planEndShouldNotMoveTheEndWhenTheExecutionsLastLessThanTheirPeriod() {
+        AdaptiveScheduler subject = new AdaptiveScheduler();
+        CorrelationCountProcessorConfig configuration = configuration(5 * HOP);
+        subject.recordExecution("rule", configuration, END, END + 20 * HOP, END + 20 * HOP + HOP / 2);
+
+        assertEquals(OptionalLong.of(END + HOP), subject.planEnd("rule", configuration, END + HOP, END + 21 * HOP));
+    }
+
+    @Test
+    public void planEndShouldStretchThePeriodToTheDurationOfTheExecutions() {
+        AdaptiveScheduler subject = new AdaptiveScheduler();
+        CorrelationCountProcessorConfig configuration = configuration(5 * HOP);
+        subject.recordExecution("rule", configuration, END, END + 20 * HOP, END + 22 * HOP + HOP / 2);
+
+        assertEquals(OptionalLong.of(END + 3 * HOP), subject.planEnd("rule", configuration, END + HOP, END + 23 * HOP));
+    }
+
+    @Test
+    public void planEndShouldNotStretchThePeriodBeyondItsBound() {
+        AdaptiveScheduler subject = new AdaptiveScheduler();
+        CorrelationCountProcessorConfig configuration = configuration(2 * HOP);
+        subject.recordExecution("rule", configuration, END, END + 20 * HOP, END + 24 * HOP);
+
+        assertEquals(OptionalLong.of(END + 2 * HOP), subject.planEnd("rule", configuration, END + HOP, END + 24 * HOP));
+    }
+
+    @Test
+    public void planEndShouldNotEvaluateTheRuleInTheFuture() {
+        AdaptiveScheduler subject = new AdaptiveScheduler();
+        CorrelationCountProcessorConfig configuration = configuration(5 * HOP);
+        subject.recordExecution("rule", configuration, END, END, END + 4 * HOP);
+
+        assertEquals(OptionalLong.of(END + 2 * HOP), subject.planEnd("rule", configuration, END + HOP, END + 2 * HOP + HOP / 2));
+    }
+
+    @Test
+    public void planEndShouldSkipTheExecutionsWhoseEndWasAlreadyEvaluated() {
+        AdaptiveScheduler subject = new AdaptiveScheduler();
+        CorrelationCountProcessorConfig configuration = configuration(5 * HOP);
+        subject.recordExecution("rule", configuration, END + 3 * HOP, END + 20 * HOP, END + 23 * HOP);
+
+        assertEquals(OptionalLong.empty(), subject.planEnd("rule", configuration, END + 2 * HOP, END + 23 * HOP));
+        assertEquals(OptionalLong.empty(), subject.planEnd("rule", configuration, END + 3 * HOP, END + 23 * HOP));
+    }
+
+    @Test
+    public void evictExpiredShouldForgetTheRulesWhichDidNotRunForLongerThanTheirWindow() {
+        AdaptiveScheduler subject = new AdaptiveScheduler();
+        CorrelationCountProcessorConfig configuration = configuration(5 * HOP);
+        subject.recordExecution("rule", configuration, END + 3 * HOP, END + 20 * HOP, END + 23 * HOP);
+
+        subject.evictExpired(END + 23 * HOP + WINDOW + 1);
+
+        assertEquals(OptionalLong.of(END + 2 * HOP), subject.planEnd("rule", configuration, END + 2 * HOP, END + 40 * HOP));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.events.processor.aggregation.AggregationResult;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AggregationCacheTest {
+
+    private static final DateTime NOW = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final long MINUTE = 60 * 1000;
+
+    private final EventDefinition eventDefinition = Mockito.mock(EventDefinition.class);
+
+    private static AggregationCache.Key key(String stream, DateTime to) {
+        return AggregationCache.Key.create(stream, "*", List.of("user"), SeriesType.COUNT, "", AbsoluteRange.create(to.minusMinutes(1), to), MINUTE, MINUTE);
+    }
+
+    private static AggregationResult result(DateTime to) {
+        return AggregationResult.builder()
+                .keyResults(List.of())
+                .effectiveTimerange(AbsoluteRange.create(to.minusMinutes(1), to))
+                .totalAggregatedMessages(0)
+                .sourceStreams(Set.of("stream"))
+                .build();
+    }
+
+    @Test
+    public void getShouldSearchOnlyOnceTheSameAggregation() throws EventProcessorException {
+        AggregationCache subject = new AggregationCache(10, Duration.minutes(1), new MetricRegistry());
+        AggregationResult result = result(NOW);
+        AtomicInteger searchCount = new AtomicInteger();
+
+        AggregationResult first = subject.get(key("stream", NOW), () -> { searchCount.incrementAndGet(); return result; }, this.eventDefinition);
+        AggregationResult second = subject.get(key("stream", NOW), () -> { searchCount.incrementAndGet(); return result; }, this.eventDefinition);
+
+        assertThat(first).isSameAs(result);
+        assertThat(second).isSameAs(result);
+        assertThat(searchCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void getShouldSearchAgainWhenTheTimeRangeIsDifferent() throws EventProcessorException {
+        AggregationCache subject = new AggregationCache(10, Duration.minutes(1), new MetricRegistry());
+        AtomicInteger searchCount = new AtomicInteger();
+
+        subject.get(key("stream", NOW), () -> { searchCount.incrementAndGet(); return result(NOW); }, this.eventDefinition);
+        subject.get(key("stream", NOW.plusMinutes(1)), () -> { searchCount.incrementAndGet(); return result(NOW.plusMinutes(1)); }, this.eventDefinition);
+
+        assertThat(searchCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void getShouldAlwaysSearchWhenTheCacheIsDisabled() throws EventProcessorException {
+        AggregationCache subject = new AggregationCache(0, Duration.minutes(1), new MetricRegistry());
+        AtomicInteger searchCount = new AtomicInteger();
+
+        subject.get(key("stream", NOW), () -> { searchCount.incrementAndGet(); return result(NOW); }, this.eventDefinition);
+        subject.get(key("stream", NOW), () -> { searchCount.incrementAndGet(); return result(NOW); }, this.eventDefinition);
+
+        assertThat(searchCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void getShouldPropagateTheFailureOfTheSearch() {
+        AggregationCache subject = new AggregationCache(10, Duration.minutes(1), new MetricRegistry());
+        EventProcessorException failure = new EventProcessorException("failure", false, "id", this.eventDefinition);
+
+        assertThatThrownBy(() -> subject.get(key("stream", NOW), () -> { throw failure; }, this.eventDefinition)).isSameAs(failure);
+    }
+
+    @Test
+    public void getShouldCountHitsAndMisses() throws EventProcessorException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        AggregationCache subject = new AggregationCache(10, Duration.minutes(1), metricRegistry);
+        AggregationResult result = result(NOW);
+
+        subject.get(key("stream", NOW), () -> result, this.eventDefinition);
+        subject.get(key("stream", NOW), () -> result, this.eventDefinition);
+        subject.get(key("other stream", NOW), () -> result, this.eventDefinition);
+
+        Gauge<?> hits = metricRegistry.getGauges().get(MetricRegistry.name(AggregationCache.class, "hits"));
+        Gauge<?> misses = metricRegistry.getGauges().get(MetricRegistry.name(AggregationCache.class, "misses"));
+        assertThat(hits.getValue()).isEqualTo(1L);
+        assertThat(misses.getValue()).isEqualTo(2L);
+    }
+}
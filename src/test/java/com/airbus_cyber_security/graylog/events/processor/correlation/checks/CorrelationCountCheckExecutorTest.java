@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CorrelationCountCheckExecutorTest {
+
+    private final EventDefinition eventDefinition = Mockito.mock(EventDefinition.class);
+
+    @Test
+    public void invokeAllShouldReturnTheResultsInTheOrderOfTheChecks() throws EventProcessorException {
+        CorrelationCountCheckExecutor subject = new CorrelationCountCheckExecutor(8, 4);
+        List<Callable<Integer>> checks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int value = i;
+            // the first checks complete last
+            checks.add(() -> {
+                Thread.sleep(20 - value);
+                return value;
+            });
+        }
+
+        List<Integer> results = subject.invokeAll(checks, this.eventDefinition);
+
+        assertThat(results).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19);
+    }
+
+    @Test
+    public void invokeAllShouldNotRunMoreChecksThanTheLimitPerRule() throws EventProcessorException {
+        CorrelationCountCheckExecutor subject = new CorrelationCountCheckExecutor(8, 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximumRunning = new AtomicInteger();
+        List<Callable<Integer>> checks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            checks.add(() -> {
+                maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                running.decrementAndGet();
+                return 0;
+            });
+        }
+
+        subject.invokeAll(checks, this.eventDefinition);
+
+        assertThat(maximumRunning.get()).isBetween(1, 3);
+    }
+
+    @Test
+    public void invokeAllShouldNotRunMoreChecksThanTheGlobalLimit() throws Exception {
+        CorrelationCountCheckExecutor subject = new CorrelationCountCheckExecutor(2, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximumRunning = new AtomicInteger();
+        List<Thread> rules = new ArrayList<>();
+        for (int rule = 0; rule < 2; rule++) {
+            List<Callable<Integer>> checks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                checks.add(() -> {
+                    maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(2);
+                    running.decrementAndGet();
+                    return 0;
+                });
+            }
+            Thread thread = new Thread(() -> {
+                try {
+                    subject.invokeAll(checks, this.eventDefinition);
+                } catch (EventProcessorException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            thread.start();
+            rules.add(thread);
+        }
+        for (Thread thread: rules) {
+            thread.join();
+        }
+
+        assertThat(maximumRunning.get()).isBetween(1, 2);
+    }
+
+    @Test
+    public void invokeAllShouldPropagateTheFirstFailure() {
+        CorrelationCountCheckExecutor subject = new CorrelationCountCheckExecutor(8, 4);
+        EventProcessorException failure = new EventProcessorException("failure", false, "id", this.eventDefinition);
+        AtomicInteger started = new AtomicInteger();
+        List<Callable<Integer>> checks = new ArrayList<>();
+        checks.add(() -> {
+            throw failure;
+        });
+        for (int i = 0; i < 100; i++) {
+            checks.add(() -> {
+                started.incrementAndGet();
+                Thread.sleep(10);
+                return 0;
+            });
+        }
+
+        assertThatThrownBy(() -> subject.invokeAll(checks, this.eventDefinition)).isSameAs(failure);
+        assertThat(started.get()).isLessThan(100);
+    }
+}
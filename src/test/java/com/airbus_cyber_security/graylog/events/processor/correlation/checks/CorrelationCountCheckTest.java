@@ -19,40 +19,23 @@ package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
 
 import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
 import com.airbus_cyber_security.graylog.events.processor.correlation.checks.OrderType;
-import org.graylog2.plugin.Message;
-import org.graylog2.plugin.MessageFactory;
-import org.graylog2.plugin.MessageSummary;
-import org.graylog2.plugin.TestMessageFactory;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
+import org.graylog.events.processor.EventProcessorException;
 import org.junit.Test;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class CorrelationCountCheckTest {
 
     @Test
     public void testCheckOrderStreamThreshold2After() {
-        MessageFactory testMessageFactory = new TestMessageFactory();
-
-        List<MessageSummary> summariesStream1 = new ArrayList<MessageSummary>();
-        summariesStream1.add(new MessageSummary("0", testMessageFactory.createMessage("message", "source", new DateTime(600, DateTimeZone.UTC))));
-        summariesStream1.add(new MessageSummary("1", testMessageFactory.createMessage("message", "source", new DateTime(1100, DateTimeZone.UTC))));
-
-        List<MessageSummary> summariesStream2 = new ArrayList<MessageSummary>();
-        summariesStream2.add(new MessageSummary("0", testMessageFactory.createMessage("message", "source", new DateTime(100, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("1", testMessageFactory.createMessage("message", "source", new DateTime(200, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("2", testMessageFactory.createMessage("message", "source", new DateTime(300, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("3", testMessageFactory.createMessage("message", "source", new DateTime(400, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("4", testMessageFactory.createMessage("message", "source", new DateTime(500, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("5", testMessageFactory.createMessage("message", "source", new DateTime(700, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("6", testMessageFactory.createMessage("message", "source", new DateTime(800, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("7", testMessageFactory.createMessage("message", "source", new DateTime(900, DateTimeZone.UTC))));
-        summariesStream2.add(new MessageSummary("8", testMessageFactory.createMessage("message", "source", new DateTime(1000, DateTimeZone.UTC))));
+        long[] timestampsStream1 = { 600, 1100 };
+        long[] timestampsStream2 = { 100, 200, 300, 400, 500, 700, 800, 900, 1000 };
 
         CorrelationCountProcessorConfig configuration = CorrelationCountProcessorConfig.builder()
                 .stream("main stream")
@@ -71,6 +54,152 @@ public class CorrelationCountCheckTest {
                 .build();
 
         CorrelationCountCheck subject = new CorrelationCountCheck(configuration);
-        assertTrue(subject.isRuleTriggered(summariesStream2, summariesStream1));
+        assertTrue(subject.isRuleTriggered(timestampsStream2, timestampsStream1));
+    }
+
+    @Test
+    public void isRuleTriggeredShouldBeEquivalentToReferenceImplementation() throws EventProcessorException {
+        Random random = new Random(42);
+        ThresholdType[] thresholdTypes = ThresholdType.values();
+        OrderType[] orders = { OrderType.BEFORE, OrderType.AFTER };
+        for (int i = 0; i < 20000; i++) {
+            String thresholdType = thresholdTypes[random.nextInt(thresholdTypes.length)].getDescription();
+            int threshold = random.nextInt(12);
+            String additionalThresholdType = thresholdTypes[random.nextInt(thresholdTypes.length)].getDescription();
+            int additionalThreshold = random.nextInt(12);
+            OrderType order = orders[random.nextInt(orders.length)];
+            // a small range of timestamps, to have many identical timestamps
+            long[] timestampsMainStream = randomTimestamps(random, random.nextInt(20), 30);
+            long[] timestampsAdditionalStream = randomTimestamps(random, random.nextInt(20), 30);
+
+            CorrelationCountProcessorConfig configuration = CorrelationCountProcessorConfig.builder()
+                    .stream("main stream")
+                    .additionalStream("additional stream")
+                    .additionalThresholdType(additionalThresholdType)
+                    .additionalThreshold(additionalThreshold)
+                    .thresholdType(thresholdType)
+                    .threshold(threshold)
+                    .messagesOrder(order)
+                    .searchWithinMs(10 * 60 * 1000)
+                    .executeEveryMs(0)
+                    .groupingFields(new ArrayList<>())
+                    .comment("test comment")
+                    .searchQuery("*")
+                    .additionalSearchQuery("*")
+                    .build();
+            ReferenceOrderCheck reference = new ReferenceOrderCheck(new Threshold(thresholdType, threshold),
+                    new Threshold(additionalThresholdType, additionalThreshold), order);
+
+            CorrelationCountCheck subject = new CorrelationCountCheck(configuration);
+            String description = order + " " + thresholdType + " " + threshold + " " + Arrays.toString(timestampsMainStream)
+                    + " " + additionalThresholdType + " " + additionalThreshold + " " + Arrays.toString(timestampsAdditionalStream);
+            assertEquals(description, reference.checkOrderSecondStream(timestampsMainStream, timestampsAdditionalStream),
+                    subject.isRuleTriggered(timestampsMainStream, timestampsAdditionalStream));
+            boolean increasing = subject.isSweptByIncreasingTimestamps();
+            assertEquals(description, reference.checkOrderSecondStream(timestampsMainStream, timestampsAdditionalStream),
+                    subject.isRuleTriggered(new ArrayTimestampCursor(timestampsMainStream, increasing), new ArrayTimestampCursor(timestampsAdditionalStream, increasing)));
+        }
+    }
+
+    @Test
+    public void isRuleTriggeredShouldStopReadingTimestampsAsSoonAsTheRuleIsTriggered() throws EventProcessorException {
+        long[] timestampsStream1 = { 100, 200, 300, 400, 500 };
+        long[] timestampsStream2 = { 50, 150, 250, 350, 450 };
+
+        CorrelationCountProcessorConfig configuration = CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType("MORE")
+                .additionalThreshold(0)
+                .thresholdType("MORE")
+                .threshold(0)
+                .messagesOrder(OrderType.BEFORE)
+                .searchWithinMs(10 * 60 * 1000)
+                .executeEveryMs(0)
+                .groupingFields(new ArrayList<>())
+                .comment("test comment")
+                .searchQuery("*")
+                .additionalSearchQuery("*")
+                .build();
+
+        CorrelationCountCheck subject = new CorrelationCountCheck(configuration);
+        ArrayTimestampCursor timestampsMainStream = new ArrayTimestampCursor(timestampsStream1, true);
+        ArrayTimestampCursor timestampsAdditionalStream = new ArrayTimestampCursor(timestampsStream2, true);
+        assertTrue(subject.isRuleTriggered(timestampsMainStream, timestampsAdditionalStream));
+        assertTrue(timestampsMainStream.hasNext());
+        assertTrue(timestampsAdditionalStream.hasNext());
+    }
+
+    @Test
+    public void isRuleTriggeredShouldStopReadingTimestampsAsSoonAsTheRuleCanNotBeTriggered() throws EventProcessorException {
+        long[] timestampsStream1 = { 100, 200, 300, 400, 500 };
+        long[] timestampsStream2 = { 1000, 1100 };
+
+        CorrelationCountProcessorConfig configuration = CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType("MORE")
+                .additionalThreshold(0)
+                .thresholdType("MORE")
+                .threshold(3)
+                .messagesOrder(OrderType.BEFORE)
+                .searchWithinMs(10 * 60 * 1000)
+                .executeEveryMs(0)
+                .groupingFields(new ArrayList<>())
+                .comment("test comment")
+                .searchQuery("*")
+                .additionalSearchQuery("*")
+                .build();
+
+        CorrelationCountCheck subject = new CorrelationCountCheck(configuration);
+        ArrayTimestampCursor timestampsMainStream = new ArrayTimestampCursor(timestampsStream1, true);
+        ArrayTimestampCursor timestampsAdditionalStream = new ArrayTimestampCursor(timestampsStream2, true);
+        assertFalse(subject.isRuleTriggered(timestampsMainStream, timestampsAdditionalStream));
+        assertTrue(timestampsMainStream.hasNext());
+    }
+
+    private long[] randomTimestamps(Random random, int count, int range) {
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = random.nextInt(range);
+        }
+        return timestamps;
+    }
+
+    private static class ArrayTimestampCursor implements TimestampCursor {
+        private final long[] timestamps;
+        private int index = 0;
+
+        ArrayTimestampCursor(long[] timestamps, boolean increasing) {
+            this.timestamps = Arrays.copyOf(timestamps, timestamps.length);
+            Arrays.sort(this.timestamps);
+            if (!increasing) {
+                for (int i = 0; i < this.timestamps.length / 2; i++) {
+                    long timestamp = this.timestamps[i];
+                    this.timestamps[i] = this.timestamps[this.timestamps.length - 1 - i];
+                    this.timestamps[this.timestamps.length - 1 - i] = timestamp;
+                }
+            }
+        }
+
+        @Override
+        public long getTotal() {
+            return this.timestamps.length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index < this.timestamps.length;
+        }
+
+        @Override
+        public long peek() {
+            return this.timestamps[this.index];
+        }
+
+        @Override
+        public long next() {
+            return this.timestamps[this.index++];
+        }
     }
 }
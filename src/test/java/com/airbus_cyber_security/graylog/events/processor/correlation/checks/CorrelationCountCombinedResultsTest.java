@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CorrelationCountCombinedResultsTest {
+
+    private static final DateTime TIMESTAMP = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final GroupByFields.Layout LAYOUT = GroupByFields.layout(ImmutableList.of("field"));
+
+    @Test
+    public void getAllShouldMergeTheCountsOfBothStreams() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, false);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a"), 3);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("b"), 4);
+        subject.addSecondStreamResult(TIMESTAMP, ImmutableList.of("b"), 5);
+        subject.addSecondStreamResult(TIMESTAMP, ImmutableList.of("c"), 6);
+
+        List<CorrelationCountResult> results = new ArrayList<>(subject.getAll());
+
+        assertEquals(3, results.size());
+        assertEquals(ImmutableList.of("a"), results.get(0).getGroupByFields().getValues());
+        assertEquals(3, results.get(0).getFirstStreamCount());
+        assertEquals(0, results.get(0).getSecondStreamCount());
+        assertEquals(4, results.get(1).getFirstStreamCount());
+        assertEquals(5, results.get(1).getSecondStreamCount());
+        assertEquals(0, results.get(2).getFirstStreamCount());
+        assertEquals(6, results.get(2).getSecondStreamCount());
+    }
+
+    @Test
+    public void getAllShouldSeparateTheTimestampsOfAGroup() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, false);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a"), 1);
+        subject.addFirstStreamResult(TIMESTAMP.plusMinutes(1), ImmutableList.of("a"), 2);
+        subject.addSecondStreamResult(TIMESTAMP.plusMinutes(1), ImmutableList.of("a"), 3);
+
+        List<CorrelationCountResult> results = new ArrayList<>(subject.getAll());
+
+        assertEquals(2, results.size());
+        assertEquals(TIMESTAMP, results.get(0).getTimestamp());
+        assertEquals(1, results.get(0).getFirstStreamCount());
+        assertEquals(TIMESTAMP.plusMinutes(1), results.get(1).getTimestamp());
+        assertEquals(2, results.get(1).getFirstStreamCount());
+        assertEquals(3, results.get(1).getSecondStreamCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addFirstStreamResultShouldFailOnDuplicatedKey() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, false);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a"), 1);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a"), 1);
+    }
+
+    @Test
+    public void getAllShouldNotMergeGroupsWhoseValuesContainTheSeparator() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(GroupByFields.layout(ImmutableList.of("first", "second")), false);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a - b", "c"), 1);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a", "b - c"), 2);
+
+        List<CorrelationCountResult> results = new ArrayList<>(subject.getAll());
+
+        assertEquals(2, results.size());
+        assertEquals(ImmutableList.of("a - b", "c"), results.get(0).getGroupByFields().getValues());
+        assertEquals(ImmutableList.of("a", "b - c"), results.get(1).getGroupByFields().getValues());
+    }
+
+    @Test
+    public void getAllShouldSumTheCountsPerTimestamp() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, true);
+        subject.addFirstStreamTimestampResult(TIMESTAMP, ImmutableList.of("a"), 100, 2);
+        subject.addFirstStreamTimestampResult(TIMESTAMP, ImmutableList.of("a"), 200, 3);
+        subject.addSecondStreamTimestampResult(TIMESTAMP, ImmutableList.of("b"), 150, 1);
+
+        List<CorrelationCountResult> results = new ArrayList<>(subject.getAll());
+
+        assertEquals(2, results.size());
+        assertEquals(5, results.get(0).getFirstStreamCount());
+        assertEquals(2, results.get(0).getFirstStreamTimestamps().size());
+        assertEquals(0, results.get(0).getSecondStreamTimestamps().size());
+        assertEquals(1, results.get(1).getSecondStreamCount());
+        assertEquals(0, results.get(1).getFirstStreamTimestamps().size());
+    }
+
+    @Test
+    public void getAllShouldKeepTheValuesOfTheSeries() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, false);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a"), 10, 2.5);
+        subject.addSecondStreamResult(TIMESTAMP, ImmutableList.of("a"), 4);
+
+        List<CorrelationCountResult> results = new ArrayList<>(subject.getAll());
+
+        assertEquals(10, results.get(0).getFirstStreamCount());
+        assertEquals(2.5, results.get(0).getFirstStreamValue(), 0);
+        assertEquals(4, results.get(0).getSecondStreamValue(), 0);
+    }
+
+    @Test
+    public void getAllShouldCombineTheCountsOfTheCorrelatedStreams() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, 2, false);
+        subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of("a"), 10);
+        subject.addCorrelatedStreamResult(1, TIMESTAMP, ImmutableList.of("a"), 3);
+        subject.addCorrelatedStreamResult(0, TIMESTAMP, ImmutableList.of("b"), 7);
+
+        List<CorrelationCountResult> results = new ArrayList<>(subject.getAll());
+
+        assertEquals(2, results.size());
+        assertEquals(0, results.get(0).getCorrelatedStreamCount(0));
+        assertEquals(3, results.get(0).getCorrelatedStreamCount(1));
+        assertEquals(7, results.get(1).getCorrelatedStreamCount(0));
+        assertEquals(0, results.get(1).getFirstStreamCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addCorrelatedStreamResultShouldRejectDuplicatedKeys() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, 1, false);
+        subject.addCorrelatedStreamResult(0, TIMESTAMP, ImmutableList.of("a"), 3);
+        subject.addCorrelatedStreamResult(0, TIMESTAMP, ImmutableList.of("a"), 4);
+    }
+
+    @Test
+    public void getAllShouldHandleManyGroups() {
+        CorrelationCountCombinedResults subject = new CorrelationCountCombinedResults(LAYOUT, false);
+        for (int i = 0; i < 1000; i++) {
+            subject.addFirstStreamResult(TIMESTAMP, ImmutableList.of(String.valueOf(i)), i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            subject.addSecondStreamResult(TIMESTAMP, ImmutableList.of(String.valueOf(i)), i);
+        }
+
+        List<CorrelationCountResult> results = new ArrayList<>(subject.getAll());
+
+        assertEquals(1000, results.size());
+        assertEquals(998, results.get(998).getSecondStreamCount());
+        assertEquals(0, results.get(999).getSecondStreamCount());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CorrelationCountSearchExecutorTest {
+
+    private final EventDefinition eventDefinition = rule();
+
+    private static EventDefinition rule() {
+        EventDefinition eventDefinition = Mockito.mock(EventDefinition.class);
+        Mockito.when(eventDefinition.id()).thenReturn("rule");
+        Mockito.when(eventDefinition.title()).thenReturn("rule");
+        return eventDefinition;
+    }
+
+    @Test
+    public void invokeAllShouldReturnTheResultsInTheOrderOfTheSearches() throws EventProcessorException {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(4);
+        List<Callable<Integer>> searches = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            // the first searches complete last
+            searches.add(() -> {
+                Thread.sleep(10 - value);
+                return value;
+            });
+        }
+
+        List<Integer> results = subject.invokeAll(searches, this.eventDefinition);
+
+        assertThat(results).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    }
+
+    @Test
+    public void invokeAllShouldNotRunMoreSearchesThanTheLimitPerRule() throws EventProcessorException {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximumRunning = new AtomicInteger();
+        List<Callable<Integer>> searches = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            searches.add(() -> {
+                maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                running.decrementAndGet();
+                return 0;
+            });
+        }
+
+        subject.invokeAll(searches, this.eventDefinition);
+
+        assertThat(maximumRunning.get()).isBetween(1, 3);
+    }
+
+    @Test
+    public void invokeAllShouldNotBeBlockedByTheSearchesOfAnotherRule() throws Exception {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> slowRules = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    subject.invokeAll(List.<Callable<Integer>>of(() -> {
+                        release.await();
+                        return 0;
+                    }), rule());
+                } catch (EventProcessorException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            thread.start();
+            slowRules.add(thread);
+        }
+
+        List<Integer> results = subject.invokeAll(List.of(() -> 1), this.eventDefinition);
+
+        assertThat(results).containsExactly(1);
+        release.countDown();
+        for (Thread thread: slowRules) {
+            thread.join();
+        }
+    }
+
+    @Test
+    public void invokeAllShouldPropagateTheEventProcessorExceptionOfASearch() {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(4);
+        EventProcessorException failure = new EventProcessorException("failure", false, "id", this.eventDefinition);
+
+        assertThatThrownBy(() -> subject.invokeAll(List.of(() -> 0, () -> {
+            throw failure;
+        }), this.eventDefinition)).isSameAs(failure);
+    }
+
+    @Test
+    public void invokeAllShouldWrapTheOtherFailuresOfTheSearches() {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(4);
+        IOException failure = new IOException("failure");
+
+        assertThatThrownBy(() -> subject.invokeAll(List.of(() -> {
+            throw failure;
+        }), this.eventDefinition)).isInstanceOf(EventProcessorException.class).hasCause(failure);
+    }
+
+    @Test
+    public void invokeAllShouldCancelTheOtherSearchesWhenASearchFails() throws Exception {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(4);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Callable<Integer>> searches = new ArrayList<>();
+        searches.add(() -> {
+            started.await();
+            throw new IOException("failure");
+        });
+        searches.add(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return 0;
+        });
+
+        assertThatThrownBy(() -> subject.invokeAll(searches, this.eventDefinition)).isInstanceOf(EventProcessorException.class);
+        assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void invokeAllShouldFailWhenInterrupted() throws Exception {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(4);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean interruptedFlag = new AtomicBoolean();
+        Thread caller = new Thread(() -> {
+            try {
+                subject.invokeAll(List.<Callable<Integer>>of(() -> {
+                    started.countDown();
+                    Thread.sleep(60_000);
+                    return 0;
+                }), this.eventDefinition);
+            } catch (EventProcessorException e) {
+                failure.set(e);
+                interruptedFlag.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        caller.start();
+        started.await();
+
+        caller.interrupt();
+        caller.join();
+
+        assertThat(failure.get()).isInstanceOf(EventProcessorException.class).hasCauseInstanceOf(InterruptedException.class);
+        assertThat(interruptedFlag.get()).isTrue();
+    }
+
+    @Test
+    public void invokeAllShouldFailOnceShutDown() {
+        CorrelationCountSearchExecutor subject = new CorrelationCountSearchExecutor(4);
+        subject.shutdown();
+
+        assertThatThrownBy(() -> subject.invokeAll(List.of(() -> 0), this.eventDefinition)).isInstanceOf(EventProcessorException.class);
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountMetrics;
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog.events.processor.aggregation.AggregationEventProcessorConfig;
+import org.graylog.events.processor.aggregation.AggregationEventProcessorParameters;
+import org.graylog.events.processor.aggregation.AggregationKeyResult;
+import org.graylog.events.processor.aggregation.AggregationResult;
+import org.graylog.events.processor.aggregation.AggregationSearch;
+import org.graylog.events.processor.aggregation.AggregationSeriesValue;
+import org.graylog.events.search.MoreSearch;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog2.indexer.results.DefaultResultMessageFactory;
+import org.graylog2.indexer.results.ResultMessage;
+import org.graylog2.indexer.results.ResultMessageFactory;
+import org.graylog2.indexer.results.SearchResult;
+import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.SearchesConfig;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageSummary;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.graylog2.streams.StreamService;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class CorrelationCountSearchesTest {
+
+    private static final DateTime NOW = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final GroupByFields.Layout USER_LAYOUT = GroupByFields.layout(List.of("user"));
+
+    private final EventDefinition eventDefinition = Mockito.mock(EventDefinition.class);
+
+    /*
+     * Scrolls through batches of 3 messages, as long as the callback asks for it
+     */
+    private static MoreSearch scrollOver(int messageCount, List<Integer> batchCount) throws EventProcessorException {
+        TestMessageFactory messageFactory = new TestMessageFactory();
+        ResultMessageFactory resultMessageFactory = new DefaultResultMessageFactory(messageFactory);
+        MoreSearch moreSearch = Mockito.mock(MoreSearch.class);
+        Mockito.doAnswer(invocation -> {
+            MoreSearch.ScrollCallback callback = invocation.getArgument(6);
+            AtomicBoolean continueScrolling = new AtomicBoolean(true);
+            for (int start = 0; start < messageCount && continueScrolling.get(); start += 3) {
+                List<ResultMessage> batch = new ArrayList<>();
+                for (int i = start; i < Math.min(start + 3, messageCount); i++) {
+                    batch.add(resultMessageFactory.createFromMessage(messageFactory.createMessage("message " + i, "source", NOW)));
+                }
+                batchCount.add(batch.size());
+                callback.call(batch, continueScrolling);
+            }
+            return null;
+        }).when(moreSearch).scrollQuery(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any());
+        return moreSearch;
+    }
+
+    private static CorrelationCountSearches searches(MoreSearch moreSearch) {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        return new CorrelationCountSearches(null, null, moreSearch, null, new CorrelationCountSearchExecutor(1),
+                new AggregationCache(0, Duration.minutes(1), metricRegistry), new SearchGovernor(16, metricRegistry), new CorrelationCountMetrics(metricRegistry));
+    }
+
+    private static CorrelationCountSearches searches(Searches searches) {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        return new CorrelationCountSearches(null, searches, null, null, new CorrelationCountSearchExecutor(1),
+                new AggregationCache(0, Duration.minutes(1), metricRegistry), new SearchGovernor(16, metricRegistry), new CorrelationCountMetrics(metricRegistry));
+    }
+
+    /*
+     * The streams of the rules are in the given index sets
+     */
+    private static CorrelationCountSearches searches(AggregationSearch.Factory aggregationSearchFactory, Set<String> indexSets) {
+        StreamService streamService = Mockito.mock(StreamService.class);
+        Mockito.when(streamService.indexSetIdsByIds(Mockito.any())).thenReturn(indexSets);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        return new CorrelationCountSearches(aggregationSearchFactory, null, null, streamService, new CorrelationCountSearchExecutor(1),
+                new AggregationCache(0, Duration.minutes(1), metricRegistry), new SearchGovernor(16, metricRegistry), new CorrelationCountMetrics(metricRegistry));
+    }
+
+    /*
+     * Returns a search result with the given messages of users, sorted by decreasing timestamps, out of totalResults
+     */
+    private static SearchResult searchResult(long totalResults, Object... usersAndTimestamps) {
+        TestMessageFactory messageFactory = new TestMessageFactory();
+        ResultMessageFactory resultMessageFactory = new DefaultResultMessageFactory(messageFactory);
+        List<ResultMessage> messages = new ArrayList<>();
+        for (int i = 0; i < usersAndTimestamps.length; i += 2) {
+            Message message = messageFactory.createMessage("message", "source", (DateTime) usersAndTimestamps[i + 1]);
+            message.addField("user", usersAndTimestamps[i]);
+            messages.add(resultMessageFactory.createFromMessage(message));
+        }
+        return new SearchResult(messages, totalResults, Set.of(), "", "", 0);
+    }
+
+    private static CorrelationCountResult group(DateTime timestamp, String user) {
+        return new CorrelationCountResult(timestamp, USER_LAYOUT.with(List.of(user)), 1, 1);
+    }
+
+    private static long[] millis(DateTime... timestamps) {
+        return Arrays.stream(timestamps).mapToLong(DateTime::getMillis).toArray();
+    }
+
+    private static AggregationKeyResult bucket(List<String> key, long count) {
+        return bucket(NOW, key, count);
+    }
+
+    private static AggregationKeyResult bucket(DateTime timestamp, List<String> key, long count) {
+        AggregationSeriesValue seriesValue = AggregationSeriesValue.builder()
+                .series(Count.builder().id("correlation_id#user").build())
+                .key(key)
+                .value(count)
+                .build();
+        return AggregationKeyResult.builder()
+                .key(key)
+                .timestamp(timestamp)
+                .seriesValues(List.of(seriesValue))
+                .build();
+    }
+
+    private static AggregationResult aggregationResult(List<AggregationKeyResult> buckets) {
+        return AggregationResult.builder()
+                .keyResults(buckets)
+                .effectiveTimerange(AbsoluteRange.create(NOW.minusMinutes(1), NOW))
+                .totalAggregatedMessages(buckets.size())
+                .sourceStreams(Set.of())
+                .build();
+    }
+
+    /*
+     * Configuration of a rule on two streams with the same search query, aggregated by a single search, with a hop of a minute
+     */
+    private static CorrelationCountProcessorConfig singleAggregationConfiguration(long searchWithinMs) {
+        return CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType(ThresholdType.MORE.getDescription())
+                .additionalThreshold(1)
+                .thresholdType(ThresholdType.MORE.getDescription())
+                .threshold(1)
+                .messagesOrder(OrderType.ANY)
+                .searchWithinMs(searchWithinMs)
+                .executeEveryMs(60 * 1000)
+                .groupingFields(List.of("user"))
+                .comment("")
+                .searchQuery("*")
+                .additionalSearchQuery("*")
+                .singleAggregation(true)
+                .build();
+    }
+
+    @Test
+    public void countShouldDispatchTheBucketsOfTheSingleAggregationToTheStreams() throws EventProcessorException {
+        List<AggregationKeyResult> buckets = List.of(
+                bucket(List.of("a", "main stream"), 5),
+                bucket(List.of("a", "additional stream"), 3),
+                bucket(List.of("a", "another stream"), 100));
+        AggregationSearch search = Mockito.mock(AggregationSearch.class);
+        Mockito.when(search.doSearch()).thenReturn(aggregationResult(buckets));
+        AggregationSearch.Factory aggregationSearchFactory = Mockito.mock(AggregationSearch.Factory.class);
+        Mockito.when(aggregationSearchFactory.create(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(search);
+        CorrelationCountSearches subject = searches(aggregationSearchFactory, Set.of("index set"));
+        CorrelationCountProcessorConfig configuration = singleAggregationConfiguration(60 * 1000);
+
+        Collection<CorrelationCountResult> results = subject.count(AbsoluteRange.create(NOW.minusMinutes(1), NOW), configuration, this.eventDefinition);
+
+        assertThat(results).hasSize(1);
+        CorrelationCountResult result = results.iterator().next();
+        assertThat(result.getGroupByFields()).containsExactly(Map.entry("user", "a"));
+        assertThat(result.getFirstStreamCount()).isEqualTo(5);
+        assertThat(result.getSecondStreamCount()).isEqualTo(3);
+        Mockito.verify(aggregationSearchFactory, Mockito.times(1)).create(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void countShouldAggregateEachStreamSeparatelyWhenTheStreamsAreInDifferentIndexSets() throws EventProcessorException {
+        AggregationSearch search = Mockito.mock(AggregationSearch.class);
+        Mockito.when(search.doSearch()).thenReturn(aggregationResult(List.of()));
+        AggregationSearch.Factory aggregationSearchFactory = Mockito.mock(AggregationSearch.Factory.class);
+        Mockito.when(aggregationSearchFactory.create(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(search);
+        CorrelationCountSearches subject = searches(aggregationSearchFactory, Set.of("index set", "other index set"));
+
+        subject.count(AbsoluteRange.create(NOW.minusMinutes(1), NOW), singleAggregationConfiguration(60 * 1000), this.eventDefinition);
+
+        Mockito.verify(aggregationSearchFactory, Mockito.times(2)).create(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void countShouldCountWithoutTheTimestampsWhenTheAggregationsHaveTooManyBuckets() throws EventProcessorException {
+        EventProcessorException failure = new EventProcessorException(
+                "Trying to create too many buckets. Must be less than or equal to: [65535]. This limit can be set by changing the [search.max_buckets] cluster level setting.",
+                false, "id", this.eventDefinition);
+        AggregationSearch tooManyBuckets = Mockito.mock(AggregationSearch.class);
+        Mockito.when(tooManyBuckets.doSearch()).thenThrow(failure);
+        AggregationSearch search = Mockito.mock(AggregationSearch.class);
+        Mockito.when(search.doSearch()).thenReturn(aggregationResult(List.of(bucket(List.of("a"), 5))));
+        AggregationSearch.Factory aggregationSearchFactory = Mockito.mock(AggregationSearch.Factory.class);
+        // the aggregations fail as long as they group on the timestamps
+        Mockito.when(aggregationSearchFactory.create(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            AggregationEventProcessorConfig config = invocation.getArgument(0);
+            return config.groupBy().contains(Message.FIELD_TIMESTAMP) ? tooManyBuckets : search;
+        });
+        CorrelationCountSearches subject = searches(aggregationSearchFactory, Set.of("index set"));
+        CorrelationCountProcessorConfig configuration = singleAggregationConfiguration(60 * 1000).toBuilder()
+                .singleAggregation(false)
+                .messagesOrder(OrderType.BEFORE)
+                .orderCheck(OrderCheckType.AGGREGATION)
+                .build();
+
+        Collection<CorrelationCountResult> results = subject.count(AbsoluteRange.create(NOW.minusMinutes(1), NOW), configuration, this.eventDefinition);
+
+        assertThat(results).hasSize(1);
+        CorrelationCountResult result = results.iterator().next();
+        assertThat(result.getFirstStreamCount()).isEqualTo(5);
+        assertThat(result.getFirstStreamTimestamps()).isNull();
+    }
+
+    @Test
+    public void countPerHopShouldCountConsecutiveHopsWithASingleAggregationAndDispatchItsBucketsToTheHops() throws EventProcessorException {
+        List<AggregationKeyResult> buckets = List.of(
+                bucket(NOW.minusMinutes(2), List.of("a", "main stream"), 2),
+                bucket(NOW, List.of("a", "main stream"), 1),
+                bucket(NOW, List.of("a", "additional stream"), 4));
+        AggregationSearch search = Mockito.mock(AggregationSearch.class);
+        Mockito.when(search.doSearch()).thenReturn(aggregationResult(buckets));
+        AggregationSearch.Factory aggregationSearchFactory = Mockito.mock(AggregationSearch.Factory.class);
+        ArgumentCaptor<AggregationEventProcessorParameters> parameters = ArgumentCaptor.forClass(AggregationEventProcessorParameters.class);
+        Mockito.when(aggregationSearchFactory.create(Mockito.any(), parameters.capture(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(search);
+        CorrelationCountSearches subject = searches(aggregationSearchFactory, Set.of("index set"));
+        CorrelationCountProcessorConfig configuration = singleAggregationConfiguration(3 * 60 * 1000);
+        List<TimeRange> hops = List.of(
+                AbsoluteRange.create(NOW.minusMinutes(3), NOW.minusMinutes(2)),
+                AbsoluteRange.create(NOW.minusMinutes(2), NOW.minusMinutes(1)),
+                AbsoluteRange.create(NOW.minusMinutes(1), NOW));
+
+        List<Collection<CorrelationCountResult>> results = subject.countPerHop(hops, configuration, this.eventDefinition);
+
+        assertThat(parameters.getValue().timerange()).isEqualTo(AbsoluteRange.create(NOW.minusMinutes(3), NOW));
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0)).extracting(CorrelationCountResult::getFirstStreamCount).containsExactly(2L);
+        assertThat(results.get(1)).isEmpty();
+        assertThat(results.get(2)).extracting(CorrelationCountResult::getFirstStreamCount, CorrelationCountResult::getSecondStreamCount)
+                .containsExactly(tuple(1L, 4L));
+    }
+
+    @Test
+    public void scrollMessagesShouldHandOverTheMessagesByBatches() throws EventProcessorException {
+        CorrelationCountSearches subject = searches(scrollOver(7, new ArrayList<>()));
+        List<List<MessageSummary>> batches = new ArrayList<>();
+
+        long count = subject.scrollMessages("*", Map.of(), "stream", AbsoluteRange.create(NOW.minusMinutes(1), NOW), 100, batches::add, this.eventDefinition);
+
+        assertThat(count).isEqualTo(7);
+        assertThat(batches).extracting(List::size).containsExactly(3, 3, 1);
+    }
+
+    @Test
+    public void scrollMessagesShouldStopScrollingAtTheLimit() throws EventProcessorException {
+        List<Integer> scrolledBatches = new ArrayList<>();
+        CorrelationCountSearches subject = searches(scrollOver(20, scrolledBatches));
+        List<List<MessageSummary>> batches = new ArrayList<>();
+
+        long count = subject.scrollMessages("*", Map.of(), "stream", AbsoluteRange.create(NOW.minusMinutes(1), NOW), 5, batches::add, this.eventDefinition);
+
+        assertThat(count).isEqualTo(5);
+        assertThat(batches).extracting(List::size).containsExactly(3, 2);
+        assertThat(scrolledBatches).hasSize(2);
+    }
+
+    @Test
+    public void scrollMessagesShouldNotSearchWhenTheLimitIsZero() throws EventProcessorException {
+        MoreSearch moreSearch = scrollOver(20, new ArrayList<>());
+        CorrelationCountSearches subject = searches(moreSearch);
+
+        long count = subject.scrollMessages("*", Map.of(), "stream", AbsoluteRange.create(NOW.minusMinutes(1), NOW), 0, messages -> {}, this.eventDefinition);
+
+        assertThat(count).isEqualTo(0);
+        Mockito.verifyNoInteractions(moreSearch);
+    }
+
+    @Test
+    public void searchTimestampsShouldSearchAllTheGroupsOfABatchWithASingleQuery() throws EventProcessorException {
+        Searches searches = Mockito.mock(Searches.class);
+        Mockito.when(searches.search(Mockito.any())).thenReturn(searchResult(3, "a", NOW.minusSeconds(10), "b", NOW.minusSeconds(20), "a", NOW.minusSeconds(30)));
+        CorrelationCountSearches subject = searches(searches);
+
+        List<long[]> timestamps = subject.searchTimestamps("level: 3", "stream", List.of(group(NOW, "a"), group(NOW, "b")), 60_000, this.eventDefinition);
+
+        assertThat(timestamps).containsExactly(millis(NOW.minusSeconds(10), NOW.minusSeconds(30)), millis(NOW.minusSeconds(20)));
+        ArgumentCaptor<SearchesConfig> config = ArgumentCaptor.forClass(SearchesConfig.class);
+        Mockito.verify(searches, Mockito.times(1)).search(config.capture());
+        assertThat(config.getValue().query()).isEqualTo("(level: 3) AND ((user: \"a\") OR (user: \"b\"))");
+    }
+
+    @Test
+    public void searchTimestampsShouldNotRestrictTheBatchQueryWhenTheQueryMatchesAllMessages() throws EventProcessorException {
+        Searches searches = Mockito.mock(Searches.class);
+        Mockito.when(searches.search(Mockito.any())).thenReturn(searchResult(0));
+        CorrelationCountSearches subject = searches(searches);
+
+        subject.searchTimestamps("*", "stream", List.of(group(NOW, "a"), group(NOW, "b")), 60_000, this.eventDefinition);
+
+        ArgumentCaptor<SearchesConfig> config = ArgumentCaptor.forClass(SearchesConfig.class);
+        Mockito.verify(searches).search(config.capture());
+        assertThat(config.getValue().query()).isEqualTo("((user: \"a\") OR (user: \"b\"))");
+    }
+
+    @Test
+    public void searchTimestampsShouldDispatchTheMessagesOfGroupsWithTheSameValuesByTheirTimeRange() throws EventProcessorException {
+        Searches searches = Mockito.mock(Searches.class);
+        Mockito.when(searches.search(Mockito.any())).thenReturn(searchResult(2, "a", NOW.minusSeconds(10), "a", NOW.minusSeconds(70)));
+        CorrelationCountSearches subject = searches(searches);
+
+        List<long[]> timestamps = subject.searchTimestamps("*", "stream", List.of(group(NOW, "a"), group(NOW.minusMinutes(1), "a")), 60_000, this.eventDefinition);
+
+        assertThat(timestamps).containsExactly(millis(NOW.minusSeconds(10)), millis(NOW.minusSeconds(70)));
+        ArgumentCaptor<SearchesConfig> config = ArgumentCaptor.forClass(SearchesConfig.class);
+        Mockito.verify(searches).search(config.capture());
+        assertThat(config.getValue().query()).isEqualTo("((user: \"a\"))");
+    }
+
+    @Test
+    public void searchTimestampsShouldMatchTheNumericValuesOfTheMessagesWithTheTermsOfTheGroups() throws EventProcessorException {
+        Searches searches = Mockito.mock(Searches.class);
+        Mockito.when(searches.search(Mockito.any())).thenReturn(searchResult(2, 42L, NOW.minusSeconds(10), 1.5, NOW.minusSeconds(20)));
+        CorrelationCountSearches subject = searches(searches);
+
+        List<long[]> timestamps = subject.searchTimestamps("*", "stream", List.of(group(NOW, "42"), group(NOW, "1.50")), 60_000, this.eventDefinition);
+
+        assertThat(timestamps).containsExactly(millis(NOW.minusSeconds(10)), millis(NOW.minusSeconds(20)));
+    }
+
+    @Test
+    public void searchTimestampsShouldOnlySearchAgainTheGroupsWhichMayMissMessagesWhenTheBatchIsTruncated() throws EventProcessorException {
+        Searches searches = Mockito.mock(Searches.class);
+        Mockito.when(searches.search(Mockito.any())).thenReturn(
+                searchResult(10, "a", NOW.minusSeconds(10), "a", NOW.minusSeconds(50), "b", NOW.minusSeconds(90)),
+                searchResult(2, "b", NOW.minusSeconds(90), "b", NOW.minusSeconds(100)));
+        CorrelationCountSearches subject = searches(searches);
+
+        List<long[]> timestamps = subject.searchTimestamps("*", "stream", List.of(group(NOW, "a"), group(NOW.minusMinutes(1), "b")), 60_000, this.eventDefinition);
+
+        // the time range of the first group starts after the oldest message of the batch: it got all its messages
+        assertThat(timestamps).containsExactly(millis(NOW.minusSeconds(10), NOW.minusSeconds(50)), millis(NOW.minusSeconds(90), NOW.minusSeconds(100)));
+        ArgumentCaptor<SearchesConfig> config = ArgumentCaptor.forClass(SearchesConfig.class);
+        Mockito.verify(searches, Mockito.times(2)).search(config.capture());
+        assertThat(config.getAllValues().get(1).query()).isEqualTo("user: \"b\"");
+    }
+}
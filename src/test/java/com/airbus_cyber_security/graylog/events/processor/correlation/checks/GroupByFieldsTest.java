@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GroupByFieldsTest {
+
+    private static final GroupByFields.Layout LAYOUT = GroupByFields.layout(ImmutableList.of("source", "user"));
+
+    @Test
+    public void getShouldReturnTheValueOfTheField() {
+        GroupByFields subject = LAYOUT.with(ImmutableList.of("10.0.0.1", "admin"));
+
+        assertEquals("admin", subject.get("user"));
+        assertNull(subject.get("destination"));
+    }
+
+    @Test
+    public void entrySetShouldFollowTheOrderOfTheNames() {
+        GroupByFields subject = LAYOUT.with(ImmutableList.of("10.0.0.1", "admin"));
+
+        assertEquals(ImmutableList.of("source", "user"), new ArrayList<>(subject.keySet()));
+    }
+
+    @Test
+    public void equalsShouldCompareWithAnyMap() {
+        GroupByFields subject = LAYOUT.with(ImmutableList.of("10.0.0.1", "admin"));
+        Map<String, String> fields = ImmutableMap.of("user", "admin", "source", "10.0.0.1");
+
+        assertEquals(fields, subject);
+        assertEquals(fields.hashCode(), subject.hashCode());
+    }
+
+    @Test
+    public void withShouldShareTheLayout() {
+        GroupByFields first = LAYOUT.with(ImmutableList.of("10.0.0.1", "admin"));
+        GroupByFields second = LAYOUT.with(ImmutableList.of("10.0.0.2", "guest"));
+
+        assertSame(first.getLayout(), second.getLayout());
+    }
+
+    @Test
+    public void withShouldKeepTheLastValueOfARepeatedName() {
+        GroupByFields subject = GroupByFields.layout(ImmutableList.of("user", "user")).with(ImmutableList.of("admin", "guest"));
+
+        assertEquals(ImmutableMap.of("user", "guest"), subject);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withShouldFailWhenTheNumberOfValuesDoesNotMatch() {
+        LAYOUT.with(ImmutableList.of("10.0.0.1"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void putShouldFail() {
+        LAYOUT.with(ImmutableList.of("10.0.0.1", "admin")).put("user", "guest");
+    }
+}
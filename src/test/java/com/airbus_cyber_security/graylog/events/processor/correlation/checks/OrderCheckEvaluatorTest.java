@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OrderCheckEvaluatorTest {
+
+    @Test
+    public void addFirstStreamMessagesShouldBeTriggeredWhenBothThresholdsAreReached() {
+        OrderCheckEvaluator subject = new OrderCheckEvaluator(new Threshold("MORE", 2), new Threshold("MORE", 0), 5, 5);
+
+        subject.addSecondStreamMessage();
+        assertEquals(OrderCheckEvaluator.State.TRIGGERED, subject.addFirstStreamMessages(1));
+    }
+
+    @Test
+    public void addFirstStreamMessagesShouldNotBeTriggeredWhenTheRemainingMessagesOfTheFirstStreamAreTooFew() {
+        OrderCheckEvaluator subject = new OrderCheckEvaluator(new Threshold("MORE", 2), new Threshold("MORE", 0), 5, 5);
+
+        // there remain 4, then 3 messages in the first stream, which may still reach the threshold
+        assertEquals(OrderCheckEvaluator.State.UNDECIDED, subject.addFirstStreamMessages(1));
+        assertEquals(OrderCheckEvaluator.State.UNDECIDED, subject.addFirstStreamMessages(1));
+        assertEquals(OrderCheckEvaluator.State.NOT_TRIGGERED, subject.addFirstStreamMessages(1));
+    }
+
+    @Test
+    public void addFirstStreamMessagesShouldNotBeTriggeredWhenTheSecondStreamExceedsALessThreshold() {
+        OrderCheckEvaluator subject = new OrderCheckEvaluator(new Threshold("MORE", 0), new Threshold("LESS", 2), 5, 5);
+
+        subject.addSecondStreamMessage();
+        subject.addSecondStreamMessage();
+        assertEquals(OrderCheckEvaluator.State.NOT_TRIGGERED, subject.addFirstStreamMessages(1));
+    }
+
+    @Test
+    public void getStateShouldNotBeTriggeredWhenTheSecondStreamHasTooFewMessages() {
+        OrderCheckEvaluator subject = new OrderCheckEvaluator(new Threshold("MORE", 0), new Threshold("MORE", 5), 5, 5);
+
+        assertEquals(OrderCheckEvaluator.State.NOT_TRIGGERED, subject.getState());
+    }
+}
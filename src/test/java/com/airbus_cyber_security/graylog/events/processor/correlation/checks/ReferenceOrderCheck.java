@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Original (quadratic) implementation of the order check, kept as a reference for the equivalence tests of CorrelationCountCheck
+ */
+public class ReferenceOrderCheck {
+
+    private final Threshold mainStreamThreshold;
+    private final Threshold additionalStreamThreshold;
+    private final OrderType messagesOrder;
+
+    public ReferenceOrderCheck(Threshold mainStreamThreshold, Threshold additionalStreamThreshold, OrderType messagesOrder) {
+        this.mainStreamThreshold = mainStreamThreshold;
+        this.additionalStreamThreshold = additionalStreamThreshold;
+        this.messagesOrder = messagesOrder;
+    }
+
+    private boolean thresholdsAreReached(long mainCount, long additionalCount) {
+        return this.mainStreamThreshold.isReached((double) mainCount) && this.additionalStreamThreshold.isReached((double) additionalCount);
+    }
+
+    private List<DateTime> getListOrderTimestamp(long[] timestamps) {
+        List<DateTime> listDate = new ArrayList<>();
+        for (long timestamp: timestamps) {
+            listDate.add(new DateTime(timestamp, DateTimeZone.UTC));
+        }
+        Collections.sort(listDate);
+        if (this.messagesOrder.equals(OrderType.AFTER)) {
+            Collections.reverse(listDate);
+        }
+        return listDate;
+    }
+
+    public boolean checkOrderSecondStream(long[] timestampsFirstStream, long[] timestampsSecondStream) {
+        int countFirstStream = timestampsFirstStream.length;
+        List<DateTime> listDateFirstStream = getListOrderTimestamp(timestampsFirstStream);
+        List<DateTime> listDateSecondStream = getListOrderTimestamp(timestampsSecondStream);
+
+        for (DateTime dateFirstStream: listDateFirstStream) {
+            int countSecondStream = 0;
+            for (DateTime dateSecondStream: listDateSecondStream) {
+                if ((this.messagesOrder.equals(OrderType.BEFORE) && dateSecondStream.isBefore(dateFirstStream)) ||
+                        (this.messagesOrder.equals(OrderType.AFTER) && dateSecondStream.isAfter(dateFirstStream))) {
+                    countSecondStream++;
+                } else {
+                    break;
+                }
+            }
+            if (thresholdsAreReached(countFirstStream, countSecondStream)) {
+                return true;
+            }
+            countFirstStream--;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog.events.processor.EventDefinition;
+import org.graylog.events.processor.EventProcessorException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchGovernorTest {
+
+    private static EventDefinition rule(int priority) {
+        EventDefinition eventDefinition = Mockito.mock(EventDefinition.class);
+        Mockito.when(eventDefinition.id()).thenReturn("rule-" + priority);
+        Mockito.when(eventDefinition.priority()).thenReturn(priority);
+        return eventDefinition;
+    }
+
+    private static void waitForQueueDepth(SearchGovernor subject, int depth) throws InterruptedException {
+        while (subject.getQueueDepth() != depth) {
+            Thread.sleep(1);
+        }
+    }
+
+    /*
+     * Starts a search which records its name once admitted, and waits until it is queued
+     */
+    private static Thread search(SearchGovernor subject, EventDefinition eventDefinition, String name, List<String> admitted) throws InterruptedException {
+        int depth = subject.getQueueDepth();
+        Thread thread = new Thread(() -> {
+            try (SearchGovernor.Permit ignored = subject.acquire(eventDefinition)) {
+                admitted.add(name);
+            } catch (EventProcessorException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        waitForQueueDepth(subject, depth + 1);
+        return thread;
+    }
+
+    @Test
+    public void acquireShouldNotAdmitMoreSearchesThanTheLimit() throws Exception {
+        SearchGovernor subject = new SearchGovernor(2, new MetricRegistry());
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        SearchGovernor.Permit first = subject.acquire(rule(2));
+        subject.acquire(rule(2));
+
+        Thread third = search(subject, rule(2), "third", admitted);
+        assertThat(subject.getRunning()).isEqualTo(2);
+        assertThat(admitted).isEmpty();
+
+        first.close();
+        third.join();
+        assertThat(admitted).containsExactly("third");
+        assertThat(subject.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void acquireShouldAdmitTheSearchesOfTheRulesWithTheHighestPriorityFirst() throws Exception {
+        SearchGovernor subject = new SearchGovernor(1, new MetricRegistry());
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        SearchGovernor.Permit running = subject.acquire(rule(2));
+        List<Thread> threads = new ArrayList<>();
+        threads.add(search(subject, rule(1), "low", admitted));
+        threads.add(search(subject, rule(3), "high", admitted));
+        threads.add(search(subject, rule(2), "normal", admitted));
+
+        running.close();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        assertThat(admitted).containsExactly("high", "normal", "low");
+    }
+
+    @Test
+    public void acquireShouldAdmitTheSearchesWithTheSamePriorityInTheirOrderOfArrival() throws Exception {
+        SearchGovernor subject = new SearchGovernor(1, new MetricRegistry());
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        EventDefinition eventDefinition = rule(2);
+        SearchGovernor.Permit running = subject.acquire(eventDefinition);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            threads.add(search(subject, eventDefinition, "search " + i, admitted));
+        }
+
+        running.close();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        assertThat(admitted).containsExactly("search 0", "search 1", "search 2", "search 3", "search 4");
+    }
+
+    @Test
+    public void acquireShouldLeaveTheQueueWhenInterrupted() throws Exception {
+        SearchGovernor subject = new SearchGovernor(1, new MetricRegistry());
+        SearchGovernor.Permit running = subject.acquire(rule(2));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try (SearchGovernor.Permit ignored = subject.acquire(rule(2))) {
+                // never admitted
+            } catch (EventProcessorException e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        waitForQueueDepth(subject, 1);
+
+        thread.interrupt();
+        thread.join();
+
+        assertThat(failure.get()).isInstanceOf(EventProcessorException.class);
+        assertThat(subject.getQueueDepth()).isEqualTo(0);
+        running.close();
+        assertThat(subject.getRunning()).isEqualTo(0);
+    }
+
+    @Test
+    public void acquireShouldFailWithAnEventProcessorExceptionWhenInterruptedForAnUnsavedRule() throws Exception {
+        SearchGovernor subject = new SearchGovernor(1, new MetricRegistry());
+        SearchGovernor.Permit running = subject.acquire(rule(2));
+        EventDefinition unsavedRule = Mockito.mock(EventDefinition.class);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try (SearchGovernor.Permit ignored = subject.acquire(unsavedRule)) {
+                // never admitted
+            } catch (EventProcessorException e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        waitForQueueDepth(subject, 1);
+
+        thread.interrupt();
+        thread.join();
+
+        assertThat(failure.get()).isInstanceOf(EventProcessorException.class);
+        running.close();
+    }
+}
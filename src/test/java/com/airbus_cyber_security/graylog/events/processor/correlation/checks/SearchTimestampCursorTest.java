@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import org.graylog.events.processor.EventProcessorException;
+import org.graylog2.indexer.results.DefaultResultMessageFactory;
+import org.graylog2.indexer.results.ResultMessage;
+import org.graylog2.indexer.results.ResultMessageFactory;
+import org.graylog2.indexer.results.SearchResult;
+import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.SearchesConfig;
+import org.graylog2.indexer.searches.Sorting;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchTimestampCursorTest {
+
+    private static final AbsoluteRange RANGE = AbsoluteRange.create(new DateTime(0, DateTimeZone.UTC), new DateTime(100, DateTimeZone.UTC));
+
+    /*
+     * Answers the searches as an index containing messages with the given timestamps
+     */
+    private static Searches index(long... timestamps) {
+        TestMessageFactory messageFactory = new TestMessageFactory();
+        ResultMessageFactory resultMessageFactory = new DefaultResultMessageFactory(messageFactory);
+        Searches searches = Mockito.mock(Searches.class);
+        Mockito.when(searches.search(Mockito.any(SearchesConfig.class))).thenAnswer(invocation -> {
+            SearchesConfig config = invocation.getArgument(0);
+            List<Long> matches = new ArrayList<>();
+            for (long timestamp: timestamps) {
+                if (config.range().getFrom().getMillis() <= timestamp && timestamp <= config.range().getTo().getMillis()) {
+                    matches.add(timestamp);
+                }
+            }
+            Comparator<Long> order = Comparator.naturalOrder();
+            matches.sort(config.sorting().getDirection() == Sorting.Direction.ASC ? order : order.reversed());
+            List<ResultMessage> page = new ArrayList<>();
+            for (long timestamp: matches.subList(Math.min(config.offset(), matches.size()), Math.min(config.offset() + config.limit(), matches.size()))) {
+                page.add(resultMessageFactory.createFromMessage(messageFactory.createMessage("message", "source", new DateTime(timestamp, DateTimeZone.UTC))));
+            }
+            SearchResult result = Mockito.mock(SearchResult.class);
+            Mockito.when(result.getResults()).thenReturn(page);
+            Mockito.when(result.getTotalResults()).thenReturn((long) matches.size());
+            return result;
+        });
+        return searches;
+    }
+
+    private static List<Long> readAll(TimestampCursor cursor) throws EventProcessorException {
+        List<Long> result = new ArrayList<>();
+        while (cursor.hasNext()) {
+            result.add(cursor.next());
+        }
+        return result;
+    }
+
+    @Test
+    public void nextShouldReadAllTimestampsByIncreasingOrderWhenIdenticalTimestampsSpanSeveralPages() throws EventProcessorException {
+        Searches searches = index(5, 2, 2, 1, 2, 3, 2, 5, 2, 2);
+        SearchTimestampCursor subject = new SearchTimestampCursor(searches::search, "*", "streams:stream", RANGE, true, 3, 3);
+
+        assertThat(readAll(subject)).containsExactly(1L, 2L, 2L, 2L, 2L, 2L, 2L, 3L, 5L, 5L);
+    }
+
+    @Test
+    public void nextShouldReadAllTimestampsByDecreasingOrderWhenIdenticalTimestampsSpanSeveralPages() throws EventProcessorException {
+        Searches searches = index(5, 2, 2, 1, 2, 3, 2, 5, 2, 2);
+        SearchTimestampCursor subject = new SearchTimestampCursor(searches::search, "*", "streams:stream", RANGE, false, 3, 3);
+
+        assertThat(readAll(subject)).containsExactly(5L, 5L, 3L, 2L, 2L, 2L, 2L, 2L, 2L, 1L);
+    }
+
+    @Test
+    public void getTotalShouldReturnTheNumberOfMessagesBeforeTheyAreRead() throws EventProcessorException {
+        Searches searches = index(1, 2, 3, 4, 5, 6, 7);
+        SearchTimestampCursor subject = new SearchTimestampCursor(searches::search, "*", "streams:stream", RANGE, true, 3, 3);
+
+        assertThat(subject.getTotal()).isEqualTo(7);
+    }
+
+    @Test
+    public void nextShouldOnlySearchThePagesWhichAreRead() throws EventProcessorException {
+        Searches searches = index(1, 2, 3, 4, 5, 6, 7);
+        SearchTimestampCursor subject = new SearchTimestampCursor(searches::search, "*", "streams:stream", RANGE, true, 3, 3);
+
+        subject.next();
+        subject.next();
+        subject.next();
+
+        Mockito.verify(searches, Mockito.times(1)).search(Mockito.any(SearchesConfig.class));
+    }
+
+    @Test
+    public void nextShouldDoubleTheSizeOfThePagesUpToTheMaximum() throws EventProcessorException {
+        Searches searches = index(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16);
+        SearchTimestampCursor subject = new SearchTimestampCursor(searches::search, "*", "streams:stream", RANGE, true, 2, 5);
+
+        assertThat(readAll(subject)).hasSize(16);
+
+        ArgumentCaptor<SearchesConfig> configs = ArgumentCaptor.forClass(SearchesConfig.class);
+        Mockito.verify(searches, Mockito.times(5)).search(configs.capture());
+        assertThat(configs.getAllValues()).extracting(SearchesConfig::limit).containsExactly(2, 4, 5, 5, 5);
+    }
+}
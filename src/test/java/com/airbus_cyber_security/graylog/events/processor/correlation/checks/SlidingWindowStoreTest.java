@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlidingWindowStoreTest {
+
+    private static final long HOP = 60 * 1000;
+    private static final long WINDOW = 3 * HOP;
+
+    private static CorrelationCountProcessorConfig configuration(String searchQuery) {
+        return CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType("MORE")
+                .additionalThreshold(1)
+                .thresholdType("MORE")
+                .threshold(1)
+                .messagesOrder(OrderType.ANY)
+                .searchWithinMs(WINDOW)
+                .executeEveryMs(HOP)
+                .groupingFields(new ArrayList<>())
+                .comment("test comment")
+                .searchQuery(searchQuery)
+                .additionalSearchQuery("*")
+                .incremental(true)
+                .build();
+    }
+
+    @Test
+    public void getShouldKeepTheWindowOfAnUnchangedConfiguration() {
+        SlidingWindowStore subject = new SlidingWindowStore(Mockito.mock(SlidingWindowPersistence.class));
+        SlidingWindow window = subject.get("definition", configuration("*"), 10 * HOP);
+        for (long end: window.slideTo(10 * HOP)) {
+            window.addHop(end, List.of());
+        }
+
+        assertThat(subject.get("definition", configuration("*"), 11 * HOP)).isSameAs(window);
+    }
+
+    @Test
+    public void getShouldResetTheWindowWhenTheQueryChanges() {
+        SlidingWindowStore subject = new SlidingWindowStore(Mockito.mock(SlidingWindowPersistence.class));
+        SlidingWindow window = subject.get("definition", configuration("*"), 10 * HOP);
+
+        assertThat(subject.get("definition", configuration("source:x"), 10 * HOP)).isNotSameAs(window);
+    }
+
+    @Test
+    public void getShouldLoadThePersistedWindowWhenNotInMemory() {
+        SlidingWindowPersistence persistence = Mockito.mock(SlidingWindowPersistence.class);
+        String fingerprint = SlidingWindow.fingerprint(configuration("*"));
+        SlidingWindow persistedWindow = new SlidingWindow(fingerprint, WINDOW, HOP);
+        Mockito.when(persistence.load("definition", fingerprint)).thenReturn(Optional.of(persistedWindow));
+        SlidingWindowStore subject = new SlidingWindowStore(persistence);
+
+        assertThat(subject.get("definition", configuration("*"), 10 * HOP)).isSameAs(persistedWindow);
+    }
+
+    @Test
+    public void getShouldPreferThePersistedWindowWhenMoreRecent() {
+        SlidingWindowPersistence persistence = Mockito.mock(SlidingWindowPersistence.class);
+        SlidingWindowStore subject = new SlidingWindowStore(persistence);
+        SlidingWindow window = subject.get("definition", configuration("*"), 10 * HOP);
+        for (long end: window.slideTo(10 * HOP)) {
+            window.addHop(end, List.of());
+        }
+        // another node ran the rule for a few hops
+        String fingerprint = SlidingWindow.fingerprint(configuration("*"));
+        SlidingWindow persistedWindow = new SlidingWindow(fingerprint, WINDOW, HOP);
+        persistedWindow.addHop(14 * HOP, List.of());
+        Mockito.when(persistence.load("definition", fingerprint)).thenReturn(Optional.of(persistedWindow));
+
+        assertThat(subject.get("definition", configuration("*"), 15 * HOP)).isSameAs(persistedWindow);
+    }
+
+    @Test
+    public void getShouldReturnTheWindowPublishedByAnotherExecutionWhileLoading() {
+        SlidingWindowPersistence persistence = Mockito.mock(SlidingWindowPersistence.class);
+        SlidingWindowStore subject = new SlidingWindowStore(persistence);
+        AtomicReference<SlidingWindow> otherWindow = new AtomicReference<>();
+        AtomicBoolean loading = new AtomicBoolean();
+        // the load is not run while holding the map: another execution can get the window meanwhile
+        Mockito.when(persistence.load(Mockito.eq("definition"), Mockito.any())).thenAnswer(invocation -> {
+            if (loading.compareAndSet(false, true)) {
+                otherWindow.set(subject.get("definition", configuration("*"), 10 * HOP));
+            }
+            return Optional.empty();
+        });
+
+        assertThat(subject.get("definition", configuration("*"), 10 * HOP)).isSameAs(otherWindow.get());
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018 Airbus CyberSecurity (SAS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+
+package com.airbus_cyber_security.graylog.events.processor.correlation.checks;
+
+import com.airbus_cyber_security.graylog.events.processor.correlation.CorrelationCountProcessorConfig;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SlidingWindowTest {
+
+    private static final long HOP = 60 * 1000;
+    private static final long WINDOW = 3 * HOP;
+    private static final DateTime TIMESTAMP = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private static final GroupByFields.Layout LAYOUT = GroupByFields.layout(ImmutableList.of("field"));
+
+    private static CorrelationCountResult result(String group, long firstStreamCount, long secondStreamCount) {
+        return new CorrelationCountResult(TIMESTAMP, LAYOUT.with(ImmutableList.of(group)), firstStreamCount, secondStreamCount);
+    }
+
+    private static CorrelationCountProcessorConfig configuration(String searchQuery) {
+        return CorrelationCountProcessorConfig.builder()
+                .stream("main stream")
+                .additionalStream("additional stream")
+                .additionalThresholdType("MORE")
+                .additionalThreshold(1)
+                .thresholdType("MORE")
+                .threshold(1)
+                .messagesOrder(OrderType.ANY)
+                .searchWithinMs(WINDOW)
+                .executeEveryMs(HOP)
+                .groupingFields(new ArrayList<>())
+                .comment("test comment")
+                .searchQuery(searchQuery)
+                .additionalSearchQuery("*")
+                .incremental(true)
+                .build();
+    }
+
+    @Test
+    public void slideToShouldReturnAllHopsOfAnEmptyWindow() {
+        SlidingWindow subject = new SlidingWindow("fingerprint", WINDOW, HOP);
+
+        assertEquals(List.of(10 * HOP - 2 * HOP, 10 * HOP - HOP, 10 * HOP), subject.slideTo(10 * HOP));
+    }
+
+    @Test
+    public void slideToShouldOnlyReturnTheNewHops() {
+        SlidingWindow subject = new SlidingWindow("fingerprint", WINDOW, HOP);
+        for (long end: subject.slideTo(10 * HOP)) {
+            subject.addHop(end, List.of());
+        }
+
+        assertEquals(List.of(11 * HOP), subject.slideTo(11 * HOP));
+    }
+
+    @Test
+    public void getResultsShouldSumTheHopsOfTheWindow() {
+        SlidingWindow subject = new SlidingWindow("fingerprint", WINDOW, HOP);
+        subject.slideTo(3 * HOP);
+        subject.addHop(HOP, List.of(result("a", 1, 0)));
+        subject.addHop(2 * HOP, List.of(result("a", 2, 3), result("b", 0, 4)));
+        subject.addHop(3 * HOP, List.of(result("a", 5, 0)));
+
+        List<CorrelationCountResult> results = subject.getResults(TIMESTAMP, LAYOUT);
+
+        assertEquals(2, results.size());
+        assertEquals(8, results.get(0).getFirstStreamCount());
+        assertEquals(3, results.get(0).getSecondStreamCount());
+        assertEquals(4, results.get(1).getSecondStreamCount());
+    }
+
+    @Test
+    public void slideToShouldEvictTheExpiredHops() {
+        SlidingWindow subject = new SlidingWindow("fingerprint", WINDOW, HOP);
+        subject.slideTo(3 * HOP);
+        subject.addHop(HOP, List.of(result("a", 1, 0), result("b", 1, 1)));
+        subject.addHop(2 * HOP, List.of(result("a", 2, 0)));
+        subject.addHop(3 * HOP, List.of());
+
+        subject.slideTo(4 * HOP);
+        subject.addHop(4 * HOP, List.of());
+        List<CorrelationCountResult> results = subject.getResults(TIMESTAMP, LAYOUT);
+
+        assertEquals(1, results.size());
+        assertEquals(ImmutableList.of("a"), results.get(0).getGroupByFields().getValues());
+        assertEquals(2, results.get(0).getFirstStreamCount());
+    }
+
+    @Test
+    public void slideToShouldResetTheWindowWhenNotAlignedOnTheHops() {
+        SlidingWindow subject = new SlidingWindow("fingerprint", WINDOW, HOP);
+        for (long end: subject.slideTo(10 * HOP)) {
+            subject.addHop(end, List.of(result("a", 1, 1)));
+        }
+
+        List<Long> missingHops = subject.slideTo(11 * HOP + 1);
+
+        assertEquals(3, missingHops.size());
+        assertEquals(0, subject.getResults(TIMESTAMP, LAYOUT).size());
+    }
+
+    @Test
+    public void fromSnapshotShouldRestoreTheWindow() throws IOException {
+        SlidingWindow window = new SlidingWindow("fingerprint", WINDOW, HOP);
+        window.slideTo(3 * HOP);
+        window.addHop(2 * HOP, List.of(result("a", 1, 2), result("é - b", 3, 0)));
+        window.addHop(3 * HOP, List.of(result("a", 4, 0)));
+
+        SlidingWindow subject = SlidingWindow.fromSnapshot(window.toSnapshot());
+
+        assertEquals("fingerprint", subject.getFingerprint());
+        assertEquals(3 * HOP, subject.getEnd());
+        assertEquals(List.of(HOP), subject.slideTo(3 * HOP));
+        List<CorrelationCountResult> results = subject.getResults(TIMESTAMP, LAYOUT);
+        assertEquals(2, results.size());
+        CorrelationCountResult first = results.get(0).getGroupByFields().getValues().equals(List.of("a")) ? results.get(0) : results.get(1);
+        assertEquals(5, first.getFirstStreamCount());
+        assertEquals(2, first.getSecondStreamCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void fromSnapshotShouldFailOnAnotherVersion() throws IOException {
+        byte[] snapshot = new SlidingWindow("fingerprint", WINDOW, HOP).toSnapshot();
+        snapshot[3] = 99;
+
+        SlidingWindow.fromSnapshot(snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void fromSnapshotShouldFailOnATruncatedSnapshot() throws IOException {
+        SlidingWindow window = new SlidingWindow("fingerprint", WINDOW, HOP);
+        window.addHop(HOP, List.of(result("a", 1, 2)));
+        byte[] snapshot = window.toSnapshot();
+
+        SlidingWindow.fromSnapshot(Arrays.copyOf(snapshot, snapshot.length - 4));
+    }
+
+    @Test
+    public void fingerprintShouldNotDependOnThresholds() {
+        CorrelationCountProcessorConfig configuration = configuration("*");
+
+        assertEquals(SlidingWindow.fingerprint(configuration), SlidingWindow.fingerprint(configuration.toBuilder().threshold(10).build()));
+        assertNotEquals(SlidingWindow.fingerprint(configuration), SlidingWindow.fingerprint(configuration.toBuilder().groupingFields(List.of("user")).build()));
+    }
+}
@@ -23,7 +23,7 @@ import { naturalSortIgnoreCase } from 'util/SortUtils';
 
 import { Select, MultiSelect } from 'components/common';
 // TODO write a unit test which protects against having ControlLable, FormGroup and HelpBlock imported from components/common
-import { ControlLabel, FormGroup, HelpBlock, Input } from 'components/bootstrap';
+import { Button, ControlLabel, FormGroup, HelpBlock, Input } from 'components/bootstrap';
 import TimeUnitFormGroup from './TimeUnitFormGroup';
 
 import { defaultCompare } from 'logic/DefaultCompare';
@@ -89,6 +89,21 @@ class CorrelationCountForm extends React.Component {
         this.propagateChange('execute_every_ms', nextValue);
     };
 
+    handleAdaptiveSchedulingChange = (event) => {
+        const { eventDefinition, onChange } = this.props;
+        const config = lodash.cloneDeep(eventDefinition.config);
+        config.adaptive_scheduling = FormsUtils.getValueFromInput(event.target);
+        if (config.adaptive_scheduling && !config.max_execute_every_ms) {
+            // the executions may be stretched up to the search period, so that all the messages are still searched
+            config.max_execute_every_ms = config.search_within_ms;
+        }
+        onChange('config', config);
+    };
+
+    handleMaxExecuteEveryMsChange = (nextValue) => {
+        this.propagateChange('max_execute_every_ms', nextValue);
+    };
+
     handleStreamChange = (nextValue) => {
         this.propagateChange('stream', nextValue);
     };
@@ -105,10 +120,59 @@ class CorrelationCountForm extends React.Component {
         this.propagateChange('threshold_type', nextValue);
     };
 
+    handleSeriesChange = (nextValue) => {
+        this.propagateChange('series', nextValue);
+    };
+
+    handleSeriesFieldChange = (nextValue) => {
+        this.propagateChange('series_field', nextValue);
+    };
+
+    handleAdditionalSeriesChange = (nextValue) => {
+        this.propagateChange('additional_series', nextValue);
+    };
+
+    handleAdditionalSeriesFieldChange = (nextValue) => {
+        this.propagateChange('additional_series_field', nextValue);
+    };
+
     handleMessagesOrderChange = (nextValue) => {
         this.propagateChange('messages_order', nextValue);
     };
 
+    handleOrderCheckChange = (nextValue) => {
+        this.propagateChange('order_check', nextValue);
+    };
+
+    correlatedStreams = () => {
+        const { eventDefinition } = this.props;
+        return lodash.defaultTo(eventDefinition.config.correlated_streams, []);
+    };
+
+    handleCorrelatedStreamChange = (index, key, value) => {
+        const correlatedStreams = lodash.cloneDeep(this.correlatedStreams());
+        correlatedStreams[index][key] = value;
+        this.propagateChange('correlated_streams', correlatedStreams);
+    };
+
+    handleAddCorrelatedStream = () => {
+        const correlatedStreams = lodash.cloneDeep(this.correlatedStreams());
+        correlatedStreams.push({
+            stream: '',
+            search_query: '*',
+            threshold_type: 'MORE',
+            threshold: 0,
+            messages_order: 'ANY',
+        });
+        this.propagateChange('correlated_streams', correlatedStreams);
+    };
+
+    handleRemoveCorrelatedStream = (index) => {
+        const correlatedStreams = lodash.cloneDeep(this.correlatedStreams());
+        correlatedStreams.splice(index, 1);
+        this.propagateChange('correlated_streams', correlatedStreams);
+    };
+
     handleGroupByChange = (selected) => {
         const nextValue = selected === '' ? [] : selected.split(',');
         this.propagateChange('grouping_fields', nextValue)
@@ -121,6 +185,17 @@ class CorrelationCountForm extends React.Component {
         ];
     };
 
+    availableSeries = () => {
+        return [
+            {value: 'COUNT', label: 'count of messages'},
+            {value: 'CARDINALITY', label: 'number of distinct values of a field'},
+            {value: 'SUM', label: 'sum of a field'},
+            {value: 'AVG', label: 'average of a field'},
+            {value: 'MIN', label: 'minimum of a field'},
+            {value: 'MAX', label: 'maximum of a field'},
+        ];
+    };
+
     availableMessagesOrder = () => {
         return [
             {value: 'BEFORE', label: 'additional messages before main messages'},
@@ -129,6 +204,21 @@ class CorrelationCountForm extends React.Component {
         ]
     };
 
+    availableCorrelatedMessagesOrder = () => {
+        return [
+            {value: 'BEFORE', label: 'correlated messages before main messages'},
+            {value: 'AFTER', label: 'correlated messages after main messages'},
+            {value: 'ANY', label: 'any order'},
+        ]
+    };
+
+    availableOrderChecks = () => {
+        return [
+            {value: 'MESSAGES', label: 'on the searched messages'},
+            {value: 'AGGREGATION', label: 'on the aggregations'},
+        ]
+    };
+
     render() {
         const { eventDefinition, validation, allFieldTypes } = this.props;
         const formattedStreams = this.formatStreamIds();
@@ -174,6 +264,38 @@ class CorrelationCountForm extends React.Component {
                     value={lodash.defaultTo(eventDefinition.threshold, eventDefinition.config.threshold)}
                     onChange={this.handleChange}
                 />
+                <FormGroup controlId="series"
+                           validationState={validation.errors.series ? 'error' : null}>
+                    <ControlLabel>Series</ControlLabel>
+                    <Select id="series"
+                            required
+                            options={this.availableSeries()}
+                            matchProp="value"
+                            value={lodash.defaultTo(eventDefinition.config.series, 'COUNT')}
+                            onChange={this.handleSeriesChange}
+                    />
+                    <HelpBlock>
+                        Select the aggregation of the messages of the main stream which is compared to the threshold
+                    </HelpBlock>
+                </FormGroup>
+                {lodash.defaultTo(eventDefinition.config.series, 'COUNT') !== 'COUNT' && (
+                    <FormGroup controlId="series_field"
+                               validationState={validation.errors.series_field ? 'error' : null}>
+                        <ControlLabel>Series Field</ControlLabel>
+                        <Select id="series_field"
+                                placeholder="Select Field"
+                                required
+                                options={formattedFields}
+                                matchProp="label"
+                                value={eventDefinition.config.series_field}
+                                onChange={this.handleSeriesFieldChange}
+                                allowCreate
+                        />
+                        <HelpBlock>
+                            Field of the messages of the main stream the series is computed on
+                        </HelpBlock>
+                    </FormGroup>
+                )}
                 <ControlLabel>Search Query <small className="text-muted">(Optional)</small></ControlLabel>
                 <Input
                     id="search_query"
@@ -221,6 +343,38 @@ class CorrelationCountForm extends React.Component {
                     value={lodash.defaultTo(eventDefinition.additional_threshold, eventDefinition.config.additional_threshold)}
                     onChange={this.handleChange}
                 />
+                <FormGroup controlId="additional_series"
+                           validationState={validation.errors.additional_series ? 'error' : null}>
+                    <ControlLabel>Additional Series</ControlLabel>
+                    <Select id="additional_series"
+                            required
+                            options={this.availableSeries()}
+                            matchProp="value"
+                            value={lodash.defaultTo(eventDefinition.config.additional_series, 'COUNT')}
+                            onChange={this.handleAdditionalSeriesChange}
+                    />
+                    <HelpBlock>
+                        Select the aggregation of the messages of the additional stream which is compared to the additional threshold
+                    </HelpBlock>
+                </FormGroup>
+                {lodash.defaultTo(eventDefinition.config.additional_series, 'COUNT') !== 'COUNT' && (
+                    <FormGroup controlId="additional_series_field"
+                               validationState={validation.errors.additional_series_field ? 'error' : null}>
+                        <ControlLabel>Additional Series Field</ControlLabel>
+                        <Select id="additional_series_field"
+                                placeholder="Select Field"
+                                required
+                                options={formattedFields}
+                                matchProp="label"
+                                value={eventDefinition.config.additional_series_field}
+                                onChange={this.handleAdditionalSeriesFieldChange}
+                                allowCreate
+                        />
+                        <HelpBlock>
+                            Field of the messages of the additional stream the series is computed on
+                        </HelpBlock>
+                    </FormGroup>
+                )}
                 <ControlLabel>Additional Search Query <small className="text-muted">(Optional)</small></ControlLabel>
                 <Input
                     id="additional_search_query"
@@ -244,6 +398,73 @@ class CorrelationCountForm extends React.Component {
                         Select condition to trigger alert: when the messages of the additional stream come in any order relative to/before/after the messages of the main stream
                     </HelpBlock>
                 </FormGroup>
+                <FormGroup controlId="order_check"
+                           validationState={validation.errors.order_check ? 'error' : null}>
+                    <ControlLabel>Order Check</ControlLabel>
+                    <Select id="order_check"
+                            required
+                            options={this.availableOrderChecks()}
+                            matchProp="value"
+                            value={lodash.defaultTo(eventDefinition.order_check, eventDefinition.config.order_check)}
+                            onChange={this.handleOrderCheckChange}
+                    />
+                    <HelpBlock>
+                        Select how the messages order is checked: on the timestamps of the messages retrieved by searches, or on the number of messages per timestamp counted by the aggregations
+                    </HelpBlock>
+                </FormGroup>
+                <FormGroup controlId="correlated_streams"
+                           validationState={validation.errors.correlated_streams ? 'error' : null}>
+                    <ControlLabel>Correlated Streams <small className="text-muted">(Optional)</small></ControlLabel>
+                    {this.correlatedStreams().map((correlatedStream, index) => (
+                        <div key={`correlated-stream-${index}`}>
+                            <Select id={`correlated_stream_${index}`}
+                                    placeholder="Select Stream"
+                                    required
+                                    options={formattedStreams}
+                                    matchProp="value"
+                                    value={correlatedStream.stream}
+                                    onChange={(nextValue) => this.handleCorrelatedStreamChange(index, 'stream', nextValue)}
+                            />
+                            <Select id={`correlated_threshold_type_${index}`}
+                                    required
+                                    options={this.availableThresholdTypes()}
+                                    matchProp="value"
+                                    value={correlatedStream.threshold_type}
+                                    onChange={(nextValue) => this.handleCorrelatedStreamChange(index, 'threshold_type', nextValue)}
+                            />
+                            <Input
+                                id={`correlated_threshold_${index}`}
+                                type="number"
+                                name="threshold"
+                                help="Value which triggers an alert if crossed by the number of messages of this stream"
+                                value={correlatedStream.threshold}
+                                onChange={(event) => this.handleCorrelatedStreamChange(index, 'threshold', FormsUtils.getValueFromInput(event.target))}
+                            />
+                            <Input
+                                id={`correlated_search_query_${index}`}
+                                type="text"
+                                name="search_query"
+                                help="Query string that should be used to filter messages in this stream"
+                                value={correlatedStream.search_query}
+                                onChange={(event) => this.handleCorrelatedStreamChange(index, 'search_query', FormsUtils.getValueFromInput(event.target))}
+                            />
+                            <Select id={`correlated_messages_order_${index}`}
+                                    required
+                                    options={this.availableCorrelatedMessagesOrder()}
+                                    matchProp="value"
+                                    value={correlatedStream.messages_order}
+                                    onChange={(nextValue) => this.handleCorrelatedStreamChange(index, 'messages_order', nextValue)}
+                            />
+                            <Button bsSize="xsmall" onClick={() => this.handleRemoveCorrelatedStream(index)}>Remove</Button>
+                        </div>
+                    ))}
+                    <Button bsSize="small" onClick={this.handleAddCorrelatedStream}>Add correlated stream</Button>
+                    <HelpBlock>
+                        {validation.errors.correlated_streams
+                            ? lodash.get(validation, 'errors.correlated_streams[0]')
+                            : 'Other streams whose number of messages must also reach their threshold, optionally before or after the messages of the main stream'}
+                    </HelpBlock>
+                </FormGroup>
                 <TimeUnitFormGroup
                     label="Search within the last"
                     value={lodash.defaultTo(eventDefinition.search_within_ms, eventDefinition.config.search_within_ms)}
@@ -256,6 +477,41 @@ class CorrelationCountForm extends React.Component {
                     update={this.handleExecuteEveryMsChange}
                     errors={validation.errors.execute_every_ms}
                 />
+                <Input
+                    id="incremental"
+                    type="checkbox"
+                    name="incremental"
+                    label="Incremental evaluation"
+                    help="Keep the counts between executions and only search the messages of the last execution period (the search period must be a multiple of the execution period)"
+                    checked={lodash.defaultTo(eventDefinition.incremental, eventDefinition.config.incremental)}
+                    onChange={this.handleChange}
+                />
+                <Input
+                    id="single_aggregation"
+                    type="checkbox"
+                    name="single_aggregation"
+                    label="Single aggregation"
+                    help="Aggregate the messages of all the streams with one search, split by stream (only when all the streams have the same search query and series, otherwise each stream is aggregated separately)"
+                    checked={lodash.defaultTo(eventDefinition.single_aggregation, eventDefinition.config.single_aggregation)}
+                    onChange={this.handleChange}
+                />
+                <Input
+                    id="adaptive_scheduling"
+                    type="checkbox"
+                    name="adaptive_scheduling"
+                    label="Adaptive scheduling"
+                    help="When the executions last longer than the execution period, evaluate the rule less often rather than falling behind (the skipped periods are not evaluated)"
+                    checked={lodash.defaultTo(eventDefinition.adaptive_scheduling, eventDefinition.config.adaptive_scheduling)}
+                    onChange={this.handleAdaptiveSchedulingChange}
+                />
+                {eventDefinition.config.adaptive_scheduling && (
+                    <TimeUnitFormGroup
+                        label="Execute search at least every"
+                        value={eventDefinition.config.max_execute_every_ms}
+                        update={this.handleMaxExecuteEveryMsChange}
+                        errors={validation.errors.max_execute_every_ms}
+                    />
+                )}
                 <FormGroup controlId="group-by">
                     <ControlLabel>Group by Field(s) <small className="text-muted">(Optional)</small></ControlLabel>
                     <MultiSelect id="group-by"
@@ -20,6 +20,18 @@ import PropTypes from 'prop-types';
 import { extractDurationAndUnit } from 'components/common/TimeUnitInput';
 import { TIME_UNITS } from 'components/event-definitions/event-definition-types/FilterForm';
 
+const formatSeries = (series, field) => {
+    if (!series || series === 'COUNT') {
+        return 'COUNT';
+    }
+    return `${series}(${field})`;
+};
+
+const formatCorrelatedStream = (correlatedStream) => {
+    const order = correlatedStream.messages_order && correlatedStream.messages_order !== 'ANY' ? `, ${correlatedStream.messages_order} the main stream` : '';
+    return `${correlatedStream.stream}: ${correlatedStream.threshold_type} ${correlatedStream.threshold} (${correlatedStream.search_query})${order}`;
+};
+
 class CorrelationCountSummary extends React.Component {
     static propTypes = {
         config: PropTypes.string.isRequired,
@@ -29,6 +41,7 @@ class CorrelationCountSummary extends React.Component {
         const { config } = this.props;
         const searchWithin = extractDurationAndUnit(config.search_within_ms, TIME_UNITS);
         const executeEvery = extractDurationAndUnit(config.execute_every_ms, TIME_UNITS);
+        const maxExecuteEvery = extractDurationAndUnit(config.max_execute_every_ms, TIME_UNITS);
 
         return (
             <React.Fragment>
@@ -44,6 +57,10 @@ class CorrelationCountSummary extends React.Component {
                     <td>Threshold:</td>
                     <td>{config.threshold}</td>
                 </tr>
+                <tr>
+                    <td>Series:</td>
+                    <td>{formatSeries(config.series, config.series_field)}</td>
+                </tr>
                 <tr>
                     <td>Search Query:</td>
                     <td>{config.search_query}</td>
@@ -60,6 +77,10 @@ class CorrelationCountSummary extends React.Component {
                     <td>Additional Threshold:</td>
                     <td>{config.additional_threshold}</td>
                 </tr>
+                <tr>
+                    <td>Additional Series:</td>
+                    <td>{formatSeries(config.additional_series, config.additional_series_field)}</td>
+                </tr>
                 <tr>
                     <td>Additional Search Query:</td>
                     <td>{config.additional_search_query}</td>
@@ -68,6 +89,16 @@ class CorrelationCountSummary extends React.Component {
                     <td>Messages Order:</td>
                     <td>{config.messages_order || 'No messages order for this condition.'}</td>
                 </tr>
+                {(config.correlated_streams || []).map((correlatedStream, index) => (
+                    <tr key={`correlated-stream-${index}`}>
+                        <td>Correlated Stream:</td>
+                        <td>{formatCorrelatedStream(correlatedStream)}</td>
+                    </tr>
+                ))}
+                <tr>
+                    <td>Order Check:</td>
+                    <td>{config.order_check || 'MESSAGES'}</td>
+                </tr>
                 <tr>
                     <td>Search within:</td>
                     <td>{searchWithin.duration} {searchWithin.unit.toLowerCase()}</td>
@@ -76,6 +107,18 @@ class CorrelationCountSummary extends React.Component {
                     <td>Execute search every:</td>
                     <td>{executeEvery.duration} {executeEvery.unit.toLowerCase()}</td>
                 </tr>
+                <tr>
+                    <td>Incremental evaluation:</td>
+                    <td>{config.incremental ? 'yes' : 'no'}</td>
+                </tr>
+                <tr>
+                    <td>Single aggregation:</td>
+                    <td>{config.single_aggregation ? 'yes' : 'no'}</td>
+                </tr>
+                <tr>
+                    <td>Adaptive scheduling:</td>
+                    <td>{config.adaptive_scheduling ? `yes, execute search at least every ${maxExecuteEvery.duration} ${maxExecuteEvery.unit.toLowerCase()}` : 'no'}</td>
+                </tr>
                 <tr>
                     <td>Grouping Fields:</td>
                     <td>{config.grouping_fields.join(', ') || 'No grouping fields for this condition.'}</td>
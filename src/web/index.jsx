@@ -24,14 +24,24 @@ const DEFAULT_CONFIGURATION = {
     stream: '',
     threshold_type: 'MORE',
     threshold: '0',
+    series: 'COUNT',
+    series_field: '',
     search_query: '*',
     additional_stream: '',
     additional_threshold_type: 'MORE',
     additional_threshold: '0',
+    additional_series: 'COUNT',
+    additional_series_field: '',
     additional_search_query: '*',
+    correlated_streams: [],
     search_within_ms: 60*1000,
     execute_every_ms: 60*1000,
     messages_order: 'ANY',
+    order_check: 'MESSAGES',
+    incremental: false,
+    single_aggregation: false,
+    adaptive_scheduling: false,
+    max_execute_every_ms: 0,
     grouping_fields: [],
     comment: '',
 };